@@ -0,0 +1,96 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/*
+ * Lets the bar use an IBatchedScroller wherever it expects an ICustomScroller. Depths are fetched a
+ * window at a time around the item asked for, along with the total, and served from that window
+ * until either an item outside it is asked for or the adapter's data changes. While scrolling
+ * through the window that means no calls at all, and at most one per frame otherwise.
+ */
+class BatchedScroller implements ICustomScroller {
+
+    private static final int WINDOW = 256;
+
+    private final MaterialScrollBar materialScrollBar;
+    private final IBatchedScroller scroller;
+    private final long[] depths = new long[WINDOW];
+    private int windowStart;
+    private int windowEnd;
+    private long totalDepth;
+    private boolean valid;
+
+    BatchedScroller(MaterialScrollBar msb, IBatchedScroller scroller) {
+        materialScrollBar = msb;
+        this.scroller = scroller;
+    }
+
+    /**
+     * Drops the cached depths, for instance because the adapter's data has changed.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    // Fetches a window of depths with the item roughly in the middle of it.
+    private void fetch(int index) {
+        int itemCount = Utils.getItemCount(materialScrollBar.recyclerView);
+        windowStart = Math.max(0, Math.min(index - WINDOW / 2, itemCount - WINDOW));
+        windowEnd = Math.min(itemCount, windowStart + WINDOW);
+        totalDepth = scroller.getDepths(windowStart, windowEnd, depths);
+        valid = true;
+    }
+
+    @Override
+    public int getDepthForItem(int index) {
+        return (int) Math.min(getLargeDepthForItem(index), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getItemIndexForScroll(float progress) {
+        return getLargeItemIndexForScroll(progress);
+    }
+
+    @Override
+    public int getTotalDepth() {
+        return (int) Math.min(getLargeTotalDepth(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        if(!valid || index < windowStart || index >= windowEnd) {
+            fetch(index);
+        }
+        if(index < windowStart || index >= windowEnd) {
+            return index < windowStart ? 0 : totalDepth;
+        }
+        return depths[index - windowStart];
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        return scroller.getItemIndexForScroll(progress);
+    }
+
+    @Override
+    public long getLargeTotalDepth() {
+        if(!valid) {
+            fetch(windowStart + (windowEnd - windowStart) / 2);
+        }
+        return totalDepth;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/*
+ * The scroller used for a ConcatAdapter. Each child adapter is a segment with geometry of its own:
+ * its ICustomScroller if it implements one, otherwise rows of a single height learned from its
+ * children as they are laid out. The depth before each segment is kept as a prefix sum, so lookups
+ * are a binary search over the segments followed by a question to a single child.
+ *
+ * When the data changes, only segments whose item count changed, or which contain changed items,
+ * are asked for their total again.
+ */
+class ConcatScroller implements ICustomScroller {
+
+    private final MaterialScrollBar materialScrollBar;
+    private RecyclerView.Adapter<?>[] adapters = new RecyclerView.Adapter<?>[0];
+    private MemoizedScroller[] scrollers = new MemoizedScroller[0];
+    private int[] counts = new int[0];
+    // Learned row height of segments without a scroller, 0 until one of their rows is seen.
+    private int[] rowHeights = new int[0];
+    private boolean[] dirty = new boolean[0];
+    private long[] depths = new long[0];
+    // The depth before each segment, followed by the total depth.
+    private long[] depthBefore = new long[1];
+    private boolean stale = true;
+
+    ConcatScroller(MaterialScrollBar msb) {
+        materialScrollBar = msb;
+    }
+
+    /**
+     * Learns the row height of segments without a scroller from the children on screen.
+     */
+    void measureChildren() {
+        ConcatSegments segments = sync();
+        if(segments == null) {
+            return;
+        }
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        for(int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            if(position == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            int segment = segments.getSegment(position);
+            if(scrollers[segment] == null && rowHeights[segment] == 0) {
+                rowHeights[segment] = Utils.getRowHeight(recyclerView.getLayoutManager(), child);
+                // Every other segment which hasn't been seen yet is estimated from this one.
+                Arrays.fill(dirty, true);
+                stale = true;
+            }
+        }
+    }
+
+    /**
+     * Items were inserted or removed. Segments whose item count changed are found on the next sync.
+     */
+    void onStructureChanged() {
+        stale = true;
+    }
+
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        ConcatSegments segments = materialScrollBar.scrollUtils.getConcatSegments();
+        if(segments != null && segments.size() == dirty.length && itemCount > 0) {
+            int last = segments.getSegment(positionStart + itemCount - 1);
+            for(int segment = segments.getSegment(positionStart); segment <= last; segment++) {
+                dirty[segment] = true;
+            }
+        }
+        stale = true;
+    }
+
+    void onChanged() {
+        Arrays.fill(dirty, true);
+        stale = true;
+    }
+
+    // Brings the segments' totals and the prefix sums up to date after a change.
+    private ConcatSegments sync() {
+        ConcatSegments segments = materialScrollBar.scrollUtils.getConcatSegments();
+        if(segments == null || !stale) {
+            return segments;
+        }
+        int size = segments.size();
+        if(size != adapters.length) {
+            adapters = new RecyclerView.Adapter<?>[size];
+            scrollers = new MemoizedScroller[size];
+            counts = new int[size];
+            rowHeights = new int[size];
+            dirty = new boolean[size];
+            depths = new long[size];
+            depthBefore = new long[size + 1];
+        }
+        boolean changed = false;
+        for(int segment = 0; segment < size; segment++) {
+            RecyclerView.Adapter<?> adapter = segments.getAdapter(segment);
+            if(adapter != adapters[segment]) {
+                adapters[segment] = adapter;
+                scrollers[segment] = adapter instanceof ICustomScroller ? new MemoizedScroller((ICustomScroller) adapter) : null;
+                rowHeights[segment] = 0;
+                counts[segment] = -1;
+            }
+            if(segments.getItemCount(segment) != counts[segment]) {
+                counts[segment] = segments.getItemCount(segment);
+                dirty[segment] = true;
+            }
+        }
+        for(int segment = 0; segment < size; segment++) {
+            if(dirty[segment]) {
+                dirty[segment] = false;
+                changed = true;
+                if(scrollers[segment] != null) {
+                    scrollers[segment].invalidate();
+                    depths[segment] = scrollers[segment].getLargeTotalDepth();
+                } else {
+                    depths[segment] = (long) counts[segment] * getRowHeight(segment);
+                }
+            }
+        }
+        if(changed) {
+            for(int segment = 0; segment < size; segment++) {
+                depthBefore[segment + 1] = depthBefore[segment] + depths[segment];
+            }
+        }
+        stale = false;
+        return segments;
+    }
+
+    // The learned row height of a segment, or the average of the segments which have been seen.
+    private int getRowHeight(int segment) {
+        if(rowHeights[segment] > 0) {
+            return rowHeights[segment];
+        }
+        long sum = 0;
+        int seen = 0;
+        for(int height : rowHeights) {
+            if(height > 0) {
+                sum += height;
+                seen++;
+            }
+        }
+        return seen == 0 ? 0 : (int) (sum / seen);
+    }
+
+    @Override
+    public int getDepthForItem(int index) {
+        return (int) Math.min(getLargeDepthForItem(index), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getItemIndexForScroll(float progress) {
+        return getLargeItemIndexForScroll(progress);
+    }
+
+    @Override
+    public int getTotalDepth() {
+        return (int) Math.min(getLargeTotalDepth(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        ConcatSegments segments = sync();
+        if(segments == null || segments.size() == 0) {
+            return 0;
+        }
+        int segment = segments.getSegment(index);
+        int local = index - segments.getStart(segment);
+        if(scrollers[segment] != null) {
+            return depthBefore[segment] + scrollers[segment].getLargeDepthForItem(local);
+        }
+        return depthBefore[segment] + (long) local * getRowHeight(segment);
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        ConcatSegments segments = sync();
+        if(segments == null || segments.size() == 0) {
+            return 0;
+        }
+        long depth = ScrollingUtilities.getDepthForProgress(progress, materialScrollBar.scrollUtils.getAvailableScrollHeight());
+        // The last segment which starts at or above the depth. Empty segments share their depth with
+        // the next one, so this only lands on one at the very bottom, and then steps back.
+        int low = 0;
+        int high = segments.size() - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(depthBefore[mid] <= depth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        while(low > 0 && depths[low] == 0) {
+            low--;
+        }
+        int segment = low;
+        int count = segments.getItemCount(segment);
+        if(count == 0) {
+            return segments.getStart(segment);
+        }
+        long offset = depth - depthBefore[segment];
+        int local;
+        if(scrollers[segment] != null) {
+            local = getItemForDepth(segment, count, offset);
+        } else {
+            int rowHeight = getRowHeight(segment);
+            local = rowHeight <= 0 ? 0 : (int) Math.min(offset / rowHeight, Integer.MAX_VALUE);
+        }
+        return segments.getStart(segment) + Math.max(0, Math.min(local, count - 1));
+    }
+
+    /*
+     * Asks a child's scroller for its item at a depth. Like any ICustomScroller it takes progress as
+     * a share of how far it could scroll on its own, so the depth is turned into that. The bottom
+     * screenful of a child can't be reached that way, nor can any of a child which fits on screen,
+     * so there its items are searched by depth instead.
+     */
+    private int getItemForDepth(int segment, int count, long offset) {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        MemoizedScroller scroller = scrollers[segment];
+        long scrollHeight = ScrollingUtilities.getAvailableScrollHeight(depths[segment], recyclerView.getPaddingTop(), recyclerView.getPaddingBottom(), recyclerView.getHeight());
+        if(scrollHeight > 0 && offset <= scrollHeight) {
+            return scroller.getLargeItemIndexForScroll((double) offset / scrollHeight);
+        }
+        int low = 0;
+        int high = count - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(scroller.getLargeDepthForItem(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public long getLargeTotalDepth() {
+        sync();
+        return depthBefore[adapters.length];
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import androidx.recyclerview.widget.ConcatAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Where each child adapter of a ConcatAdapter starts. Kept as prefix offsets so that the child
+ * holding a position is a binary search, O(log segments). Only rebuilt, in O(segments), after the
+ * data has changed.
+ */
+class ConcatSegments {
+
+    private ConcatAdapter concatAdapter;
+    private List<? extends RecyclerView.Adapter<? extends RecyclerView.ViewHolder>> adapters = Collections.emptyList();
+    // The first position of each segment, followed by the total item count.
+    private int[] starts = new int[1];
+    private boolean dirty = true;
+
+    void invalidate() {
+        dirty = true;
+    }
+
+    void sync(ConcatAdapter concatAdapter) {
+        if(!dirty && concatAdapter == this.concatAdapter) {
+            return;
+        }
+        this.concatAdapter = concatAdapter;
+        adapters = concatAdapter.getAdapters();
+        if(starts.length < adapters.size() + 1) {
+            starts = new int[adapters.size() + 1];
+        }
+        for(int i = 0; i < adapters.size(); i++) {
+            starts[i + 1] = starts[i] + adapters.get(i).getItemCount();
+        }
+        dirty = false;
+    }
+
+    int size() {
+        return adapters.size();
+    }
+
+    /**
+     * @return The segment which holds the position. Empty segments are never returned for
+     * positions inside the list.
+     */
+    int getSegment(int position) {
+        int low = 0;
+        int high = adapters.size() - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(starts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    int getStart(int segment) {
+        return starts[segment];
+    }
+
+    int getItemCount(int segment) {
+        return starts[segment + 1] - starts[segment];
+    }
+
+    RecyclerView.Adapter<? extends RecyclerView.ViewHolder> getAdapter(int segment) {
+        return adapters.get(segment);
+    }
+}
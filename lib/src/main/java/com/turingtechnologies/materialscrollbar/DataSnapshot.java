@@ -0,0 +1,86 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An immutable copy of an adapter's data, for adapters whose data is replaced from a worker thread.
+ * Subclasses should also implement the interface of the indicator being used, such as
+ * {@link INameableAdapter}, so that the indicator can describe items from the snapshot rather than
+ * from the adapter. See {@link ISnapshotAdapter}.
+ *
+ * Nothing in a snapshot may change once it has been published. A new one is published instead,
+ * with a higher version, through a {@link Reference}.
+ */
+public abstract class DataSnapshot {
+
+    private final long version;
+    private final int itemCount;
+
+    /**
+     * @param version Higher for newer data.
+     * @param itemCount The number of items in the snapshot.
+     */
+    protected DataSnapshot(long version, int itemCount) {
+        this.version = version;
+        this.itemCount = itemCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Holds the latest snapshot. It can be published to from any thread and read from the main
+     * thread without locking; everything written to a snapshot before it is published is seen by
+     * whoever reads it afterwards.
+     */
+    public static class Reference<S extends DataSnapshot> {
+
+        private final AtomicReference<S> current = new AtomicReference<>();
+
+        /**
+         * Makes the snapshot the latest one, unless one with a higher version has already been
+         * published, as can happen when several worker threads race.
+         *
+         * @return Whether the snapshot was published.
+         */
+        public boolean publish(S snapshot) {
+            while(true) {
+                S old = current.get();
+                if(old != null && old.getVersion() > snapshot.getVersion()) {
+                    return false;
+                }
+                if(current.compareAndSet(old, snapshot)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return The latest snapshot, or null if none has been published.
+         */
+        public S get() {
+            return current.get();
+        }
+    }
+}
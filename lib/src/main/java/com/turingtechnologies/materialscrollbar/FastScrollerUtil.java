@@ -2,9 +2,18 @@ package com.turingtechnologies.materialscrollbar;
 
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 /**
  * Created by flisar on 11.04.2016.
@@ -39,6 +48,25 @@ public class FastScrollerUtil
          * @return The height of a row
          */
         int getRowHeight();
+        /**
+         * Override if the headers aren't all the same height, for instance by looking the height
+         * for {@link RecyclerView.Adapter#getItemViewType(int)} up in a table.
+         * @param headerIndex Index of the header
+         * @return The height of the header
+         */
+        default int getHeaderHeight(int headerIndex)
+        {
+            return getHeaderHeight();
+        }
+        /**
+         * Override if the rows of some sections are a different height to others.
+         * @param headerIndex Index of the header of the section
+         * @return The height of a row in the section
+         */
+        default int getRowHeight(int headerIndex)
+        {
+            return getRowHeight();
+        }
     }
 
     // ---------------------
@@ -136,7 +164,32 @@ public class FastScrollerUtil
         private int mSpan;
         private int mCount;
         private int mRows;
-        private ArrayList<HeaderData> mHeaderData;
+
+        // One entry per header (section): the number of items underneath it, and the height of the
+        // header and of the rows underneath it.
+        private int mHeaders;
+        private int[] mItems = new int[0];
+        private int[] mHeaderHeights = new int[0];
+        private int[] mRowHeights = new int[0];
+        // Whether any section has heights other than the adapter's getHeaderHeight()/getRowHeight().
+        private boolean mVariableHeights;
+        // Fenwick trees (1-based) over the size (header + items), rows and depth of each section. The
+        // index of a header, and the rows and depth before it, are prefix sums of these, so lookups
+        // are a walk down a tree and changing one section only touches O(log sections) nodes.
+        private int[] mSizeTree = new int[1];
+        private int[] mRowTree = new int[1];
+        private int[] mDepthTree = new int[1];
+        // What was left over from the last findSection().
+        private int mFoundRemainder;
+        // Counts builds started and changes made, so that a build finishing in the background can
+        // tell whether it has been replaced by a newer one or missed a change.
+        private int mBuilds;
+        private int mChanges;
+        // The build running in the background, if it is the same as mBuilds, or -1 if none is.
+        private int mAsyncBuild = -1;
+        // Where builds which finish in the background are handed back. The main thread unless a
+        // test says otherwise.
+        Executor mMainThread;
 
         private int mHeaderHeight;
         private int mRowHeight;
@@ -152,44 +205,193 @@ public class FastScrollerUtil
             return mSpan;
         }
 
-        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcData(T adapter)
+        /**
+         * Like {@link #calcData(RecyclerView.Adapter)}, but keeps the result in a file so that the next
+         * time the list is shown (even after a cold start) the headers needn't be searched for again.
+         * The file holds the item count and heights of every section. Opening it still reads all of
+         * them and rebuilds the lookup trees, which costs O(headers); what it saves is asking the
+         * adapter about all O(items).
+         * If the file is missing or was written for a different version, item count, span or heights,
+         * the data is calculated as usual and the file rewritten.
+         *
+         * @param cacheFile Where to keep the data, for instance in {@link android.content.Context#getCacheDir()}
+         * @param version Any value which changes whenever the headers might have moved
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcData(T adapter, File cacheFile, long version)
         {
-            mHeaderData = new ArrayList<>();
+            mBuilds++; // drops any build still running in the background
+            mCount = adapter.getItemCount();
+            mHeaderHeight = adapter.getHeaderHeight();
+            mRowHeight = adapter.getRowHeight();
+            if(readCache(cacheFile, version))
+                return;
+            calcData(adapter);
+            writeCache(cacheFile, version);
+        }
 
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcData(T adapter)
+        {
             // 1) How many items do we have (inkl. headers) + init local variables
+            mBuilds++;
             mCount = adapter.getItemCount();
             mHeaderHeight = adapter.getHeaderHeight();
             mRowHeight = adapter.getRowHeight();
-            // 2) How many rows do we have? + fill map with index of header and items under this header + calc rows
-            mRows = 0;
+            mHeaders = 0;
+            // 2) fill arrays with index of header and items under this header
             int itemsAddedToHeaders = 0;
-            for(int i = 1; i < mCount; i++)
+            for(int i = 1; i <= mCount; i++)
             {
-                if(adapter.isHeader(i) || i == mCount - 1)
+                if(i == mCount || adapter.isHeader(i))
                 {
                     // current header group end found => save the data
-                    int itemsUnderneathHeader = i - itemsAddedToHeaders;
-                    if(i != mCount - 1)
-                        itemsUnderneathHeader -= 1; // remove next header item from count
-                    HeaderData headerData = new HeaderData(itemsAddedToHeaders, itemsUnderneathHeader);
-                    mHeaderData.add(headerData);
+                    int itemsUnderneathHeader = i - itemsAddedToHeaders - 1; // everything between the two headers
+                    addSection(adapter, itemsAddedToHeaders, itemsUnderneathHeader);
                     // increase itemsHandled, so that the next header knows how many items are before it
                     itemsAddedToHeaders += 1; // add header item
                     itemsAddedToHeaders += itemsUnderneathHeader; // add items of this header
-                    // adjust row count
-                    mRows += headerData.getRows(mSpan);
                 }
             }
 
-            // 3) calc total height
-            mTotalHeight = mHeaderData.size() * mHeaderHeight;
-            for(int i = 0; i < mHeaderData.size(); i++)
-                mTotalHeight += (mHeaderData.get(i).getRows(mSpan) - 1) * mRowHeight;
+            // 3) calc rows and heights
+            buildTrees();
+            logData();
+        }
+
+        /**
+         * Like {@link #calcData(RecyclerView.Adapter)}, but for when the positions of the headers are
+         * already known, so that isHeader() needn't be called for every item. Costs O(headers).
+         * The first item is always treated as a header, as it is by calcData(adapter), so
+         * headerPositions may leave 0 out.
+         *
+         * @param headerPositions The positions of the headers in the list of ALL items, in ascending order
+         * @param headers How many of the positions to use
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcData(T adapter, int[] headerPositions, int headers)
+        {
+            mBuilds++;
+            mCount = adapter.getItemCount();
+            mHeaderHeight = adapter.getHeaderHeight();
+            mRowHeight = adapter.getRowHeight();
+            mHeaders = 0;
+            int start = 0;
+            for(int i = 0; i <= headers && start < mCount; i++)
+            {
+                int next = i < headers ? headerPositions[i] : mCount;
+                if(next <= start)
+                {
+                    if(next == 0 && i == 0)
+                        continue; // the first header, which is implied
+                    throw new IllegalArgumentException("Header positions must be in ascending order, found " + next + " after " + start);
+                }
+                next = Math.min(next, mCount);
+                addSection(adapter, start, next - start - 1);
+                start = next;
+            }
+            buildTrees();
+            logData();
+        }
+
+        /**
+         * Like {@link #calcData(RecyclerView.Adapter)}, but takes the size of each section instead of
+         * looking for the headers. Costs O(sections). The sections are taken to cover the whole list,
+         * starting with a header at 0.
+         *
+         * @param sectionSizes The number of items underneath each header, not counting the header
+         * @param sections How many of the sizes to use
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcDataFromSizes(T adapter, int[] sectionSizes, int sections)
+        {
+            mBuilds++;
+            mHeaderHeight = adapter.getHeaderHeight();
+            mRowHeight = adapter.getRowHeight();
+            mHeaders = 0;
+            mCount = 0;
+            for(int i = 0; i < sections; i++)
+            {
+                if(sectionSizes[i] < 0)
+                    throw new IllegalArgumentException("Section " + i + " has a negative size");
+                addSection(adapter, mCount, sectionSizes[i]);
+                mCount += 1 + sectionSizes[i];
+            }
+            buildTrees();
+            logData();
+        }
+
+        /**
+         * Like {@link #calcData(RecyclerView.Adapter)}, but the data is calculated on the executor and
+         * only replaces the current data, in one go on the main thread, once it is complete. Until
+         * then the manager keeps answering from the data it already has, so nothing waits for the
+         * build. The adapter is read on the executor, so it must be safe to do so.
+         *
+         * If the manager is changed while the build runs, the build is started again so the change
+         * isn't lost. If another build is started, only the newest one is used.
+         *
+         * @param onReady Run on the main thread once the new data is in use, for instance to call
+         *                {@link MaterialScrollBar#notifyGeometryChanged()}. May be null.
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void calcDataAsync(final T adapter, final Executor executor, final Runnable onReady)
+        {
+            final int build = ++mBuilds;
+            mAsyncBuild = build;
+            final int changes = mChanges;
+            final int span = mSpan;
+            final Executor mainThread = mMainThread != null ? mMainThread : new Handler(Looper.getMainLooper())::post;
+            executor.execute(() ->
+            {
+                final HeaderScrollManager next = new HeaderScrollManager(span);
+                next.calcData(adapter);
+                mainThread.execute(() ->
+                {
+                    // A newer build has taken over, and will clear mAsyncBuild itself if it is
+                    // running in the background.
+                    if(build != mBuilds)
+                        return;
+                    mAsyncBuild = -1;
+                    if(changes != mChanges)
+                    {
+                        calcDataAsync(adapter, executor, onReady);
+                        return;
+                    }
+                    swap(next);
+                    if(onReady != null)
+                        onReady.run();
+                });
+            });
+        }
+
+        // Takes over the data of a manager which was built in the background.
+        private void swap(HeaderScrollManager next)
+        {
+            mCount = next.mCount;
+            mRows = next.mRows;
+            mHeaders = next.mHeaders;
+            mItems = next.mItems;
+            mHeaderHeights = next.mHeaderHeights;
+            mRowHeights = next.mRowHeights;
+            mVariableHeights = next.mVariableHeights;
+            mSizeTree = next.mSizeTree;
+            mRowTree = next.mRowTree;
+            mDepthTree = next.mDepthTree;
+            mHeaderHeight = next.mHeaderHeight;
+            mRowHeight = next.mRowHeight;
+            mTotalHeight = next.mTotalHeight;
+        }
 
+        private <T extends RecyclerView.Adapter & IHeaderAdapter> void addSection(T adapter, int headerIndex, int items)
+        {
+            ensureCapacity(mHeaders + 1);
+            mItems[mHeaders] = items;
+            mHeaderHeights[mHeaders] = adapter.getHeaderHeight(headerIndex);
+            mRowHeights[mHeaders] = adapter.getRowHeight(headerIndex);
+            mHeaders++;
+        }
+
+        private void logData()
+        {
             if(DEBUG)
             {
-                for(int i = 0; i < mHeaderData.size(); i++)
-                    Log.d(TAG, "Header data " + i + ": headerIndex=" + mHeaderData.get(i).headerIndex + " | items=" + mHeaderData.get(i).items + " | rows=" + mHeaderData.get(i).getRows(mSpan));
+                for(int i = 0; i < mHeaders; i++)
+                    Log.d(TAG, "Header data " + i + ": headerIndex=" + getHeaderIndex(i) + " | items=" + mItems[i] + " | rows=" + getRows(mItems[i]));
                 for(int i = 0; i <= mCount; i++)
                 {
                     float progress = (float) i / (float) mCount;
@@ -200,38 +402,453 @@ public class FastScrollerUtil
             }
         }
 
-        public int getTotalDepth()
+        // ---------------------
+        // Incremental updates
+        // --------------------
+
+        /**
+         * Updates the sections for items inserted into the adapter, instead of calling
+         * {@link #calcData(RecyclerView.Adapter)} again. Only the new items are checked for headers.
+         * Items which aren't headers join the section before them in O(log sections); new headers
+         * split that section, which costs O(sections).
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void onItemRangeInserted(T adapter, int positionStart, int itemCount)
         {
-            return mTotalHeight;
+            mChanges++;
+            if(itemCount <= 0)
+                return;
+            if(mHeaders == 0 || positionStart <= 0 || positionStart > mCount)
+            {
+                // The first header may have changed, so start over, unless that is already happening
+                // in the background.
+                if(mAsyncBuild != mBuilds)
+                    calcData(adapter);
+                return;
+            }
+            int section = findSection(mSizeTree, positionStart - 1);
+            int offset = mFoundRemainder + 1; // where the items go within the section, counting the header
+            int newHeaders = 0;
+            for(int i = positionStart; i < positionStart + itemCount; i++)
+            {
+                if(adapter.isHeader(i))
+                    newHeaders++;
+            }
+            mCount += itemCount;
+            if(newHeaders == 0)
+            {
+                setItems(section, mItems[section] + itemCount);
+                return;
+            }
+            // The section is cut where the items were inserted. Everything after the cut goes with the
+            // last of the new headers.
+            int[] items = new int[newHeaders + 1];
+            int[] headerHeights = new int[newHeaders + 1];
+            int[] rowHeights = new int[newHeaders + 1];
+            int tail = 1 + mItems[section] - offset;
+            int current = 0;
+            items[0] = offset - 1;
+            headerHeights[0] = mHeaderHeights[section];
+            rowHeights[0] = mRowHeights[section];
+            for(int i = positionStart; i < positionStart + itemCount; i++)
+            {
+                if(adapter.isHeader(i))
+                {
+                    current++;
+                    headerHeights[current] = adapter.getHeaderHeight(i);
+                    rowHeights[current] = adapter.getRowHeight(i);
+                }
+                else
+                    items[current]++;
+            }
+            items[newHeaders] += tail;
+            replaceSections(section, section + 1, items, headerHeights, rowHeights, items.length);
         }
 
-        public int getDepthForItem(int index)
+        /**
+         * Updates the sections for items removed from the adapter, instead of calling
+         * {@link #calcData(RecyclerView.Adapter)} again. Removing items from one section costs
+         * O(log sections). If headers are removed, the items left underneath them join the section
+         * before, which costs O(sections).
+         *
+         * If the first header is removed, the first item left becomes the header, as it would in a
+         * fresh build, but it keeps the heights of the removed header. Use
+         * {@link #onItemRangeRemoved(RecyclerView.Adapter, int, int)} to have them asked for.
+         */
+        public void onItemRangeRemoved(int positionStart, int itemCount)
         {
-            // 1) calculate row of this index
-            int row = 0;
-            int headersAbove = 0;
-            for(int i = 0; i < mHeaderData.size(); i++)
+            mChanges++;
+            positionStart = Math.max(positionStart, 0);
+            int total = prefix(mSizeTree, mHeaders);
+            itemCount = Math.min(itemCount, total - positionStart);
+            if(itemCount <= 0)
+                return;
+            int end = positionStart + itemCount;
+            int first = findSection(mSizeTree, positionStart);
+            int firstHeader = positionStart - mFoundRemainder;
+            int last = findSection(mSizeTree, end - 1);
+            mCount -= itemCount;
+            if(first == last && firstHeader < positionStart)
             {
-                HeaderData headerData = mHeaderData.get(i);
-                headersAbove++;
-                if(headerData.containsIndex(index))
+                setItems(first, mItems[first] - itemCount);
+                return;
+            }
+            // Works out what is left of each section touched. Sections whose header was removed
+            // give what is left of them to the section before.
+            int[] items = new int[last - first + 1];
+            int[] headerHeights = new int[items.length];
+            int[] rowHeights = new int[items.length];
+            int count = 0;
+            int header = firstHeader;
+            for(int section = first; section <= last; section++)
+            {
+                int size = 1 + mItems[section];
+                int removed = Math.min(end, header + size) - Math.max(positionStart, header);
+                int left = size - removed;
+                if(header < positionStart || header >= end || (count == 0 && first == 0 && left > 0))
                 {
-                    int relRow = headerData.getRelativeRowIndex(mSpan, index);
-                    row += relRow + 1;
-                    // remove header itself from headersAbove count if row is a header
-                    if(relRow == 0)
-                        headersAbove--;
-//                    L.d(this, "index => Header Data Index: " + index + " => " + i);
-                    break;
+                    // if the first header was removed, the first item left takes its place
+                    headerHeights[count] = mHeaderHeights[section];
+                    rowHeights[count] = mRowHeights[section];
+                    items[count++] = left - 1;
                 }
-                else
-                    row += headerData.getRows(mSpan);
+                else if(count > 0)
+                    items[count - 1] += left;
+                else if(first > 0)
+                    setItems(first - 1, mItems[first - 1] + left);
+                header += size;
             }
+            replaceSections(first, last + 1, items, headerHeights, rowHeights, count);
+        }
+
+        /**
+         * Like {@link #onItemRangeRemoved(int, int)}, but if the first header is removed the heights
+         * of the first section are asked for again, using the item which takes its place.
+         */
+        public <T extends RecyclerView.Adapter & IHeaderAdapter> void onItemRangeRemoved(T adapter, int positionStart, int itemCount)
+        {
+            onItemRangeRemoved(positionStart, itemCount);
+            if(positionStart <= 0 && itemCount > 0 && mHeaders > 0)
+            {
+                // Removing the first header has already cost O(sections), so rebuilding is no dearer.
+                mHeaderHeights[0] = adapter.getHeaderHeight(0);
+                mRowHeights[0] = adapter.getRowHeight(0);
+                buildTrees();
+            }
+        }
+
+        /**
+         * Call after the items of a section have been removed from the adapter to collapse it. Costs
+         * O(log sections).
+         *
+         * @param section The index of the section, see {@link #getSectionForItem(int)}
+         */
+        public void onSectionCollapsed(int section)
+        {
+            onSectionExpanded(section, 0);
+        }
 
-            int totalOffset = headersAbove * mHeaderHeight + (row - headersAbove - 1) * mRowHeight;
+        /**
+         * Call after the items of a section have been added to the adapter to expand it. Costs
+         * O(log sections).
+         *
+         * @param section The index of the section, see {@link #getSectionForItem(int)}
+         * @param itemCount The number of items now underneath the header
+         */
+        public void onSectionExpanded(int section, int itemCount)
+        {
+            mChanges++;
+            if(section < 0 || section >= mHeaders)
+                return;
+            mCount += itemCount - mItems[section];
+            setItems(section, itemCount);
+        }
+
+        public int getSectionCount()
+        {
+            return mHeaders;
+        }
+
+        /**
+         * @return The index of the section which contains the item, or -1 if there is none
+         */
+        public int getSectionForItem(int index)
+        {
+            if(index < 0 || index >= prefix(mSizeTree, mHeaders))
+                return -1;
+            return findSection(mSizeTree, index);
+        }
+
+        /**
+         * @return The index of the section's header in the list of ALL items
+         */
+        public int getHeaderIndex(int section)
+        {
+            return prefix(mSizeTree, Math.max(0, Math.min(section, mHeaders)));
+        }
+
+        // ---------------------
+        // Sections
+        // --------------------
+
+        private int getRows(int items)
+        {
+            return 1 + (items + mSpan - 1) / mSpan;
+        }
+
+        private int getDepth(int section, int items)
+        {
+            return mHeaderHeights[section] + (getRows(items) - 1) * mRowHeights[section];
+        }
+
+        // Changes the number of items underneath one header in O(log sections).
+        private void setItems(int section, int items)
+        {
+            int sizeDelta = items - mItems[section];
+            int rowDelta = getRows(items) - getRows(mItems[section]);
+            int depthDelta = getDepth(section, items) - getDepth(section, mItems[section]);
+            mItems[section] = items;
+            for(int i = section + 1; i <= mHeaders; i += i & -i)
+            {
+                mSizeTree[i] += sizeDelta;
+                mRowTree[i] += rowDelta;
+                mDepthTree[i] += depthDelta;
+            }
+            mRows += rowDelta;
+            mTotalHeight += depthDelta;
+        }
+
+        // Replaces the sections from..to with count new ones and rebuilds the trees.
+        private void replaceSections(int from, int to, int[] items, int[] headerHeights, int[] rowHeights, int count)
+        {
+            int headers = mHeaders - (to - from) + count;
+            ensureCapacity(headers);
+            System.arraycopy(mItems, to, mItems, from + count, mHeaders - to);
+            System.arraycopy(mHeaderHeights, to, mHeaderHeights, from + count, mHeaders - to);
+            System.arraycopy(mRowHeights, to, mRowHeights, from + count, mHeaders - to);
+            System.arraycopy(items, 0, mItems, from, count);
+            System.arraycopy(headerHeights, 0, mHeaderHeights, from, count);
+            System.arraycopy(rowHeights, 0, mRowHeights, from, count);
+            mHeaders = headers;
+            buildTrees();
+        }
+
+        private void ensureCapacity(int headers)
+        {
+            if(headers > mItems.length)
+            {
+                int length = Math.max(Math.max(16, headers), mItems.length * 2);
+                mItems = Arrays.copyOf(mItems, length);
+                mHeaderHeights = Arrays.copyOf(mHeaderHeights, length);
+                mRowHeights = Arrays.copyOf(mRowHeights, length);
+            }
+        }
+
+        // Builds the trees from the item counts in O(sections).
+        private void buildTrees()
+        {
+            if(mSizeTree.length < mHeaders + 1)
+            {
+                int length = Math.max(mHeaders + 1, mSizeTree.length * 2);
+                mSizeTree = new int[length];
+                mRowTree = new int[length];
+                mDepthTree = new int[length];
+            }
+            mRows = 0;
+            mTotalHeight = 0;
+            mVariableHeights = false;
+            for(int node = 1; node <= mHeaders; node++)
+            {
+                int items = mItems[node - 1];
+                mSizeTree[node] = 1 + items;
+                mRowTree[node] = getRows(items);
+                mDepthTree[node] = getDepth(node - 1, items);
+                mVariableHeights |= mHeaderHeights[node - 1] != mHeaderHeight || mRowHeights[node - 1] != mRowHeight;
+                mRows += mRowTree[node];
+                mTotalHeight += mDepthTree[node];
+            }
+            for(int node = 1; node <= mHeaders; node++)
+            {
+                int parent = node + (node & -node);
+                if(parent <= mHeaders)
+                {
+                    mSizeTree[parent] += mSizeTree[node];
+                    mRowTree[parent] += mRowTree[node];
+                    mDepthTree[parent] += mDepthTree[node];
+                }
+            }
+        }
+
+        // Sum over the first sections.
+        private static int prefix(int[] tree, int sections)
+        {
+            int sum = 0;
+            for(int i = sections; i > 0; i -= i & -i)
+                sum += tree[i];
+            return sum;
+        }
+
+        // Finds the section in which the running total passes value, and keeps how far into the
+        // section that is in mFoundRemainder. Every section has a size and rows of at least 1.
+        private int findSection(int[] tree, int value)
+        {
+            int section = 0;
+            for(int step = Integer.highestOneBit(Math.max(mHeaders, 1)); step > 0; step >>= 1)
+            {
+                int next = section + step;
+                if(next <= mHeaders && tree[next] <= value)
+                {
+                    section = next;
+                    value -= tree[next];
+                }
+            }
+            mFoundRemainder = value;
+            return section;
+        }
+
+        // Cache file layout: magic, format, version (long), count, span, header height, row height,
+        // rows, total height, number of headers, then blocks holding the item count, header height
+        // and row height of each header.
+        private static final int CACHE_MAGIC = 0x4D534248;
+        private static final int CACHE_FORMAT = 4;
+        private static final int CACHE_HEADER_BYTES = 44;
+
+        private boolean readCache(File cacheFile, long version)
+        {
+            if(!cacheFile.isFile())
+                return false;
+            RandomAccessFile file = null;
+            try
+            {
+                file = new RandomAccessFile(cacheFile, "r");
+                FileChannel channel = file.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(CACHE_HEADER_BYTES);
+                if(!readFully(channel, buffer))
+                    return false;
+                if(buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_FORMAT || buffer.getLong() != version
+                        || buffer.getInt() != mCount || buffer.getInt() != mSpan
+                        || buffer.getInt() != mHeaderHeight || buffer.getInt() != mRowHeight)
+                    return false;
+                int rows = buffer.getInt();
+                int totalHeight = buffer.getInt();
+                int headers = buffer.getInt();
+                if(headers < 0 || channel.size() != CACHE_HEADER_BYTES + 12L * headers)
+                    return false;
+                buffer = ByteBuffer.allocate(12 * headers);
+                if(!readFully(channel, buffer))
+                    return false;
+                ensureCapacity(headers);
+                IntBuffer ints = buffer.asIntBuffer();
+                ints.get(mItems, 0, headers);
+                ints.get(mHeaderHeights, 0, headers);
+                ints.get(mRowHeights, 0, headers);
+                mHeaders = headers;
+                // The trees aren't stored, as building them is no dearer than reading them back.
+                buildTrees();
+                if(mRows != rows || mTotalHeight != totalHeight)
+                {
+                    mHeaders = 0;
+                    return false;
+                }
+                return true;
+            }
+            catch(IOException e)
+            {
+                if(DEBUG)
+                    Log.d(TAG, "Could not read header cache " + cacheFile, e);
+                return false;
+            }
+            finally
+            {
+                close(file);
+            }
+        }
+
+        private void writeCache(File cacheFile, long version)
+        {
+            // Written next to the real file and renamed, so that a half written file is never read.
+            File temp = new File(cacheFile.getPath() + ".tmp");
+            RandomAccessFile file = null;
+            try
+            {
+                file = new RandomAccessFile(temp, "rw");
+                file.setLength(0);
+                ByteBuffer buffer = ByteBuffer.allocate(CACHE_HEADER_BYTES + 12 * mHeaders);
+                buffer.putInt(CACHE_MAGIC).putInt(CACHE_FORMAT).putLong(version)
+                        .putInt(mCount).putInt(mSpan).putInt(mHeaderHeight).putInt(mRowHeight)
+                        .putInt(mRows).putInt(mTotalHeight).putInt(mHeaders);
+                IntBuffer ints = buffer.asIntBuffer();
+                ints.put(mItems, 0, mHeaders);
+                ints.put(mHeaderHeights, 0, mHeaders);
+                ints.put(mRowHeights, 0, mHeaders);
+                buffer.rewind();
+                FileChannel channel = file.getChannel();
+                while(buffer.hasRemaining())
+                    channel.write(buffer);
+                file.close();
+                file = null;
+                if(!temp.renameTo(cacheFile))
+                    temp.delete();
+            }
+            catch(IOException e)
+            {
+                if(DEBUG)
+                    Log.d(TAG, "Could not write header cache " + cacheFile, e);
+                temp.delete();
+            }
+            finally
+            {
+                close(file);
+            }
+        }
+
+        // Fills the buffer from the channel and flips it, or returns false if the file ends first.
+        private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+        {
+            while(buffer.hasRemaining())
+            {
+                if(channel.read(buffer) < 0)
+                    return false;
+            }
+            buffer.flip();
+            return true;
+        }
+
+        private static void close(RandomAccessFile file)
+        {
+            if(file == null)
+                return;
+            try
+            {
+                file.close();
+            }
+            catch(IOException ignored) { }
+        }
+
+        public int getTotalDepth()
+        {
+            return mTotalHeight;
+        }
+
+        public int getDepthForItem(int index)
+        {
+            int totalOffset;
+            if(index < 0 || index >= prefix(mSizeTree, mHeaders))
+            {
+                // not part of any header, treated as the last row
+                totalOffset = mTotalHeight - (mHeaders > 0 ? mRowHeights[mHeaders - 1] : mRowHeight);
+            }
+            else
+            {
+                // 1) find the header of this index and the row of this index relative to it
+                int header = findSection(mSizeTree, index);
+                int relRow = (mFoundRemainder + mSpan - 1) / mSpan;
+                totalOffset = prefix(mDepthTree, header);
+                if(relRow > 0)
+                    totalOffset += mHeaderHeights[header] + (relRow - 1) * mRowHeights[header];
+            }
 
             if(DEBUG)
-                Log.d(TAG, "index => row=" + row + " of " + mRows + ", headersAbove=" + headersAbove + " (totalOffset=" + totalOffset + ")");
+                Log.d(TAG, "index " + index + " of " + mCount + " (totalOffset=" + totalOffset + ")");
 
             return totalOffset;
         }
@@ -243,28 +860,52 @@ public class FastScrollerUtil
             else if(scrollBarPos > 1)
                 scrollBarPos = 1;
 
+            if(mVariableHeights && mTotalHeight > 0)
+                return getItemIndexForDepth(scrollBarPos);
+
             // 1) calculate row that corresponds to scrollBarPos
             int rowIndex = Math.round((float)(mRows - 1) * scrollBarPos);
-            int row = rowIndex + 1;
+            if(mHeaders == 0)
+                return 0; // nothing has been built yet
+            if(rowIndex < 0 || rowIndex >= mRows)
+                throw new RuntimeException("Could not find index for scroll position!");
 
             // 2) find header that contains this row
-            int rows = 0;
-            for(int i = 0; i < mHeaderData.size(); i++)
-            {
-                HeaderData headerData = mHeaderData.get(i);
-                if(headerData.containsRow(rows, mSpan, row))
-                {
-                    int index = headerData.getFirstItemIndex(rows, mSpan, row);
+            int header = findSection(mRowTree, rowIndex);
+            int relativeRowIndex = mFoundRemainder;
+            int index = prefix(mSizeTree, header);
+            if(relativeRowIndex > 0)
+                index += relativeRowIndex * mSpan - (mSpan - 1);
 
-                    if(DEBUG)
-                        Log.d(TAG, "scrollBarPos=" + scrollBarPos + " => row " + row + " of " + mRows + " (item " + (index + 1) + " of " + mCount + ")");
+            if(DEBUG)
+                Log.d(TAG, "scrollBarPos=" + scrollBarPos + " => row " + (rowIndex + 1) + " of " + mRows + " (item " + (index + 1) + " of " + mCount + ")");
 
-                    return index;
-                }
-                rows += headerData.getRows(mSpan);
+            return index;
+        }
+
+        // When sections have rows of different heights, rows no longer take up equal shares of the
+        // bar, so the item is found at the same share of the depth instead.
+        private int getItemIndexForDepth(float scrollBarPos)
+        {
+            int depth = (int) Math.round((double)(mTotalHeight - 1) * scrollBarPos);
+            int header = findSection(mDepthTree, depth);
+            int remainder = mFoundRemainder;
+            int relativeRowIndex = 0;
+            if(remainder >= mHeaderHeights[header])
+            {
+                relativeRowIndex = 1;
+                if(mRowHeights[header] > 0)
+                    relativeRowIndex += (remainder - mHeaderHeights[header]) / mRowHeights[header];
+                relativeRowIndex = Math.min(relativeRowIndex, getRows(mItems[header]) - 1);
             }
+            int index = prefix(mSizeTree, header);
+            if(relativeRowIndex > 0)
+                index += relativeRowIndex * mSpan - (mSpan - 1);
+
+            if(DEBUG)
+                Log.d(TAG, "scrollBarPos=" + scrollBarPos + " => depth " + depth + " of " + mTotalHeight + " (item " + (index + 1) + " of " + mCount + ")");
 
-            throw new RuntimeException("Could not find index for scroll position!");
+            return index;
         }
     }
 }
\ No newline at end of file
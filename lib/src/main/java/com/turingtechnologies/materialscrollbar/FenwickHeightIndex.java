@@ -0,0 +1,476 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.Arrays;
+
+/*
+ * Per-position row heights kept in blocks of a few hundred rows, with Fenwick (binary indexed)
+ * trees over the blocks, so that the depth of any row, the total height and the row at a given
+ * depth can all be found in O(log n + BLOCK).
+ *
+ * Rows which have not been laid out yet have no height. They are counted separately and stand in
+ * at the average height of the rows which have been measured, so that the estimate improves as
+ * the user scrolls without anything having to be rebuilt.
+ *
+ * Measuring and invalidating k rows cost O(k log n). Inserting or removing anywhere only shifts
+ * the rows of the blocks it touches. When blocks are split, merged or dropped the trees are
+ * rebuilt in O(n / BLOCK), but only once, on the next query, so a DiffUtil batch of k changes
+ * costs O(k * BLOCK + n / BLOCK) in all.
+ */
+class FenwickHeightIndex implements HeightIndex {
+
+    static final int BLOCK = 512;
+    // Blocks grow up to this before they are split.
+    private static final int MAX_BLOCK = 2 * BLOCK;
+
+    // Measured heights, 0 for rows which haven't been measured, along with how many rows each
+    // block holds and the sums of its measured rows. The arrays may be longer than blockCount.
+    private int[][] blocks;
+    private int[] blockSizes;
+    private long[] blockHeights;
+    private int[] blockCounts;
+    private int blockCount;
+    private int size;
+
+    // Fenwick trees (1-based) over the blocks' rows, measured heights and measured rows.
+    private int[] sizeTree;
+    private long[] heightTree;
+    private int[] countTree;
+    // Set when blocks have been added or removed, so that the trees need rebuilding.
+    private boolean stale;
+
+    private long measuredHeight;
+    private int measuredCount;
+
+    // Where locate() last found a row.
+    private int foundBlock;
+    private int foundOffset;
+
+    FenwickHeightIndex(int size) {
+        reset(size);
+    }
+
+    @Override
+    public void reset(int size) {
+        this.size = size;
+        blockCount = (size + BLOCK - 1) / BLOCK;
+        int capacity = Math.max(blockCount, 4);
+        blocks = new int[capacity][];
+        blockSizes = new int[capacity];
+        blockHeights = new long[capacity];
+        blockCounts = new int[capacity];
+        for(int block = 0; block < blockCount; block++) {
+            blocks[block] = new int[MAX_BLOCK];
+            blockSizes[block] = Math.min(BLOCK, size - block * BLOCK);
+        }
+        measuredHeight = 0;
+        measuredCount = 0;
+        stale = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getEstimate() {
+        return measuredCount == 0 ? 0 : (int) (measuredHeight / measuredCount);
+    }
+
+    @Override
+    public void setHeight(int position, int height) {
+        if(position < 0 || position >= size || height <= 0) {
+            return;
+        }
+        locate(position);
+        update(foundBlock, foundOffset, height);
+    }
+
+    @Override
+    public int getHeight(int position) {
+        locate(position);
+        int height = blocks[foundBlock][foundOffset];
+        return height == 0 ? getEstimate() : height;
+    }
+
+    @Override
+    public long getDepth(int position) {
+        if(position <= 0) {
+            return 0;
+        }
+        if(position >= size) {
+            return getTotalDepth();
+        }
+        locate(position);
+        long height = 0;
+        int count = 0;
+        for(int i = foundBlock; i > 0; i -= i & -i) {
+            height += heightTree[i];
+            count += countTree[i];
+        }
+        int[] rows = blocks[foundBlock];
+        for(int i = 0; i < foundOffset; i++) {
+            if(rows[i] != 0) {
+                height += rows[i];
+                count++;
+            }
+        }
+        return height + (long) (position - count) * getEstimate();
+    }
+
+    @Override
+    public long getTotalDepth() {
+        return measuredHeight + (long) (size - measuredCount) * getEstimate();
+    }
+
+    @Override
+    public int getPositionForDepth(long depth) {
+        if(size == 0) {
+            return 0;
+        }
+        refresh();
+        int estimate = getEstimate();
+        int block = 0;
+        int position = 0;
+        long passed = 0;
+        // Walks down the tree, taking every node that still ends above the requested depth.
+        for(int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+            int next = block + step;
+            if(next <= blockCount) {
+                long nodeHeight = heightTree[next] + (long) (sizeTree[next] - countTree[next]) * estimate;
+                if(passed + nodeHeight <= depth) {
+                    block = next;
+                    position += sizeTree[next];
+                    passed += nodeHeight;
+                }
+            }
+        }
+        if(block == blockCount) {
+            return size - 1;
+        }
+        int[] rows = blocks[block];
+        for(int i = 0; i < blockSizes[block]; i++) {
+            passed += rows[i] == 0 ? estimate : rows[i];
+            if(passed > depth) {
+                return position + i;
+            }
+        }
+        return Math.min(position + blockSizes[block], size - 1);
+    }
+
+    @Override
+    public void insert(int position, int count) {
+        if(count <= 0) {
+            return;
+        }
+        position = Math.max(0, Math.min(position, size));
+        int block;
+        int offset;
+        if(blockCount == 0) {
+            addBlocks(0, 1);
+            block = 0;
+            offset = 0;
+        } else if(position == size) {
+            block = blockCount - 1;
+            offset = blockSizes[block];
+        } else {
+            locate(position);
+            block = foundBlock;
+            offset = foundOffset;
+        }
+        size += count;
+        int[] rows = blocks[block];
+        int length = blockSizes[block];
+        if(length + count <= MAX_BLOCK) {
+            System.arraycopy(rows, offset, rows, offset + count, length - offset);
+            Arrays.fill(rows, offset, offset + count, 0);
+            blockSizes[block] += count;
+            if(!stale) {
+                for(int i = block + 1; i <= blockCount; i += i & -i) {
+                    sizeTree[i] += count;
+                }
+            }
+            return;
+        }
+        // The block can't take them all, so the new rows and the ones which were after them move
+        // into blocks of their own.
+        int tail = length - offset;
+        addBlocks(block + 1, (count + BLOCK - 1) / BLOCK + (tail + BLOCK - 1) / BLOCK);
+        int next = block + 1;
+        for(int left = count; left > 0; left -= BLOCK) {
+            blockSizes[next++] = Math.min(left, BLOCK);
+        }
+        for(int from = offset; from < length; from += BLOCK) {
+            int moved = Math.min(BLOCK, length - from);
+            System.arraycopy(rows, from, blocks[next], 0, moved);
+            blockSizes[next] = moved;
+            for(int i = 0; i < moved; i++) {
+                if(blocks[next][i] != 0) {
+                    blockHeights[next] += blocks[next][i];
+                    blockCounts[next]++;
+                }
+            }
+            next++;
+        }
+        for(int i = offset; i < length; i++) {
+            if(rows[i] != 0) {
+                blockHeights[block] -= rows[i];
+                blockCounts[block]--;
+                rows[i] = 0;
+            }
+        }
+        blockSizes[block] = offset;
+        if(offset == 0) {
+            removeBlocks(block, 1);
+        }
+    }
+
+    @Override
+    public void remove(int position, int count) {
+        count = Math.min(count, size - position);
+        if(count <= 0 || position < 0) {
+            return;
+        }
+        locate(position);
+        int block = foundBlock;
+        int offset = foundOffset;
+        int first = block;
+        size -= count;
+        while(count > 0) {
+            int[] rows = blocks[block];
+            int length = blockSizes[block];
+            int removed = Math.min(count, length - offset);
+            long removedHeight = 0;
+            int removedCount = 0;
+            for(int i = offset; i < offset + removed; i++) {
+                if(rows[i] != 0) {
+                    removedHeight += rows[i];
+                    removedCount++;
+                }
+            }
+            System.arraycopy(rows, offset + removed, rows, offset, length - offset - removed);
+            Arrays.fill(rows, length - removed, length, 0);
+            blockSizes[block] -= removed;
+            blockHeights[block] -= removedHeight;
+            blockCounts[block] -= removedCount;
+            measuredHeight -= removedHeight;
+            measuredCount -= removedCount;
+            if(!stale) {
+                for(int i = block + 1; i <= blockCount; i += i & -i) {
+                    sizeTree[i] -= removed;
+                    heightTree[i] -= removedHeight;
+                    countTree[i] -= removedCount;
+                }
+            }
+            count -= removed;
+            offset = 0;
+            if(blockSizes[block] == 0) {
+                removeBlocks(block, 1);
+            } else {
+                block++;
+            }
+        }
+        // Keeps repeated removals from leaving lots of tiny blocks behind.
+        if(first + 1 < blockCount && blockSizes[first] + blockSizes[first + 1] <= BLOCK) {
+            System.arraycopy(blocks[first + 1], 0, blocks[first], blockSizes[first], blockSizes[first + 1]);
+            blockSizes[first] += blockSizes[first + 1];
+            blockHeights[first] += blockHeights[first + 1];
+            blockCounts[first] += blockCounts[first + 1];
+            removeBlocks(first + 1, 1);
+        }
+    }
+
+    @Override
+    public void move(int from, int to) {
+        if(from == to || from < 0 || to < 0 || from >= size || to >= size) {
+            return;
+        }
+        locate(from);
+        int moved = blocks[foundBlock][foundOffset];
+        remove(from, 1);
+        insert(to, 1);
+        setHeight(to, moved);
+    }
+
+    @Override
+    public void invalidate(int position, int count) {
+        int start = Math.max(position, 0);
+        int end = Math.min(position + count, size);
+        if(start >= end) {
+            return;
+        }
+        locate(start);
+        int block = foundBlock;
+        int offset = foundOffset;
+        for(int i = start; i < end; i++) {
+            if(offset == blockSizes[block]) {
+                block++;
+                offset = 0;
+            }
+            update(block, offset++, 0);
+        }
+    }
+
+    @Override
+    public int getRuns(int[] lengths, int[] heights) {
+        int runs = 0;
+        for(int block = 0; block < blockCount; block++) {
+            int[] rows = blocks[block];
+            for(int i = 0; i < blockSizes[block]; i++) {
+                if(runs > 0 && rows[i] == heights[runs - 1]) {
+                    lengths[runs - 1]++;
+                } else if(runs == lengths.length) {
+                    return -1;
+                } else {
+                    lengths[runs] = 1;
+                    heights[runs++] = rows[i];
+                }
+            }
+        }
+        return runs;
+    }
+
+    @Override
+    public void setRuns(int[] lengths, int[] heights, int runs) {
+        int size = 0;
+        for(int run = 0; run < runs; run++) {
+            size += lengths[run];
+        }
+        reset(size);
+        int block = 0;
+        int offset = 0;
+        for(int run = 0; run < runs; run++) {
+            for(int left = lengths[run]; left > 0; ) {
+                int filled = Math.min(left, blockSizes[block] - offset);
+                Arrays.fill(blocks[block], offset, offset + filled, heights[run]);
+                if(heights[run] != 0) {
+                    blockHeights[block] += (long) filled * heights[run];
+                    blockCounts[block] += filled;
+                    measuredHeight += (long) filled * heights[run];
+                    measuredCount += filled;
+                }
+                left -= filled;
+                offset += filled;
+                if(offset == blockSizes[block]) {
+                    block++;
+                    offset = 0;
+                }
+            }
+        }
+    }
+
+    // Finds the block which holds a row and where it is in the block, in O(log n).
+    private void locate(int position) {
+        refresh();
+        int block = 0;
+        for(int step = Integer.highestOneBit(Math.max(blockCount, 1)); step > 0; step >>= 1) {
+            int next = block + step;
+            if(next <= blockCount && sizeTree[next] <= position) {
+                block = next;
+                position -= sizeTree[next];
+            }
+        }
+        foundBlock = block;
+        foundOffset = position;
+    }
+
+    // Sets a height (0 for unmeasured) and updates the trees in O(log n).
+    private void update(int block, int offset, int height) {
+        int previous = blocks[block][offset];
+        if(previous == height) {
+            return;
+        }
+        blocks[block][offset] = height;
+        int countDelta = (height == 0 ? 0 : 1) - (previous == 0 ? 0 : 1);
+        measuredHeight += height - previous;
+        measuredCount += countDelta;
+        blockHeights[block] += height - previous;
+        blockCounts[block] += countDelta;
+        if(!stale) {
+            for(int i = block + 1; i <= blockCount; i += i & -i) {
+                heightTree[i] += height - previous;
+                countTree[i] += countDelta;
+            }
+        }
+    }
+
+    // Adds empty blocks, leaving the trees to be rebuilt.
+    private void addBlocks(int at, int count) {
+        if(blockCount + count > blocks.length) {
+            int length = Math.max(blockCount + count, blocks.length * 2);
+            blocks = Arrays.copyOf(blocks, length);
+            blockSizes = Arrays.copyOf(blockSizes, length);
+            blockHeights = Arrays.copyOf(blockHeights, length);
+            blockCounts = Arrays.copyOf(blockCounts, length);
+        }
+        int after = blockCount - at;
+        System.arraycopy(blocks, at, blocks, at + count, after);
+        System.arraycopy(blockSizes, at, blockSizes, at + count, after);
+        System.arraycopy(blockHeights, at, blockHeights, at + count, after);
+        System.arraycopy(blockCounts, at, blockCounts, at + count, after);
+        for(int block = at; block < at + count; block++) {
+            blocks[block] = new int[MAX_BLOCK];
+            blockSizes[block] = 0;
+            blockHeights[block] = 0;
+            blockCounts[block] = 0;
+        }
+        blockCount += count;
+        stale = true;
+    }
+
+    // Drops blocks, leaving the trees to be rebuilt.
+    private void removeBlocks(int at, int count) {
+        int after = blockCount - at - count;
+        System.arraycopy(blocks, at + count, blocks, at, after);
+        System.arraycopy(blockSizes, at + count, blockSizes, at, after);
+        System.arraycopy(blockHeights, at + count, blockHeights, at, after);
+        System.arraycopy(blockCounts, at + count, blockCounts, at, after);
+        blockCount -= count;
+        Arrays.fill(blocks, blockCount, blockCount + count, null);
+        stale = true;
+    }
+
+    // Rebuilds the trees from the blocks in O(n / BLOCK) if blocks have been added or removed.
+    private void refresh() {
+        if(!stale) {
+            return;
+        }
+        stale = false;
+        if(sizeTree == null || sizeTree.length < blockCount + 1) {
+            sizeTree = new int[blocks.length + 1];
+            heightTree = new long[blocks.length + 1];
+            countTree = new int[blocks.length + 1];
+        } else {
+            Arrays.fill(sizeTree, 0, blockCount + 1, 0);
+            Arrays.fill(heightTree, 0, blockCount + 1, 0);
+            Arrays.fill(countTree, 0, blockCount + 1, 0);
+        }
+        for(int node = 1; node <= blockCount; node++) {
+            sizeTree[node] += blockSizes[node - 1];
+            heightTree[node] += blockHeights[node - 1];
+            countTree[node] += blockCounts[node - 1];
+            int parent = node + (node & -node);
+            if(parent <= blockCount) {
+                sizeTree[parent] += sizeTree[node];
+                heightTree[parent] += heightTree[node];
+                countTree[parent] += countTree[node];
+            }
+        }
+    }
+}
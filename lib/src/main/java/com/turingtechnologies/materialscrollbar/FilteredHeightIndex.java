@@ -0,0 +1,202 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/*
+ * A HeightIndex over the rows a PositionFilter leaves visible, for MeasuredScrollers on lists which
+ * are filtered in place. Heights are kept by position in the underlying list, so what has been
+ * learned survives the filter changing. Fenwick trees over the underlying positions sum only the
+ * visible measured rows; when the filter changes, only the items whose bits flipped are added to
+ * or taken out of them, in O(n / 64 + k log n) for k flipped bits.
+ *
+ * The filter is what says which rows exist, so the adapter's structural notifications are ignored
+ * and reset() keeps every height. Changes to an item's content still invalidate its height.
+ */
+class FilteredHeightIndex implements HeightIndex {
+
+    private final PositionFilter filter;
+    // Measured heights by underlying position, 0 for rows which haven't been measured.
+    private final int[] heights;
+    // Fenwick trees (1-based) over the measured heights and the number of measured rows, counting
+    // only rows which were visible when the filter was last looked at.
+    private final long[] heightTree;
+    private final int[] countTree;
+    // The filter's bits as they were last looked at.
+    private final long[] seen;
+    private int seenVersion;
+
+    private long measuredHeight;
+    private int measuredCount;
+
+    FilteredHeightIndex(PositionFilter filter) {
+        this.filter = filter;
+        heights = new int[filter.size()];
+        heightTree = new long[filter.size() + 1];
+        countTree = new int[filter.size() + 1];
+        seen = filter.words.clone();
+        seenVersion = filter.version;
+    }
+
+    @Override
+    public void reset(int size) {
+        sync();
+    }
+
+    @Override
+    public int size() {
+        return filter.getVisibleCount();
+    }
+
+    @Override
+    public int getEstimate() {
+        sync();
+        return measuredCount == 0 ? 0 : (int) (measuredHeight / measuredCount);
+    }
+
+    @Override
+    public void setHeight(int position, int height) {
+        sync();
+        int source = filter.select(position);
+        if(source < 0 || height <= 0) {
+            return;
+        }
+        update(source, height);
+    }
+
+    @Override
+    public int getHeight(int position) {
+        int source = filter.select(position);
+        return source < 0 || heights[source] == 0 ? getEstimate() : heights[source];
+    }
+
+    @Override
+    public long getDepth(int position) {
+        sync();
+        int size = size();
+        if(position <= 0) {
+            return 0;
+        }
+        if(position >= size) {
+            return getTotalDepth();
+        }
+        long height = 0;
+        int count = 0;
+        for(int i = filter.select(position); i > 0; i -= i & -i) {
+            height += heightTree[i];
+            count += countTree[i];
+        }
+        return height + (long) (position - count) * getEstimate();
+    }
+
+    @Override
+    public long getTotalDepth() {
+        sync();
+        return measuredHeight + (long) (size() - measuredCount) * getEstimate();
+    }
+
+    @Override
+    public int getPositionForDepth(long depth) {
+        sync();
+        int size = size();
+        if(size == 0) {
+            return 0;
+        }
+        int estimate = getEstimate();
+        int position = 0;
+        long passed = 0;
+        // Walks down the tree, taking every node that still ends above the requested depth. Hidden
+        // rows have no height, so the rows passed are the visible ones before where it stops.
+        for(int step = Integer.highestOneBit(heights.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if(next <= heights.length) {
+                int visible = filter.rank(next) - filter.rank(position);
+                long nodeHeight = heightTree[next] + (long) (visible - countTree[next]) * estimate;
+                if(passed + nodeHeight <= depth) {
+                    position = next;
+                    passed += nodeHeight;
+                }
+            }
+        }
+        return Math.min(filter.rank(position), size - 1);
+    }
+
+    @Override
+    public void insert(int position, int count) {}
+
+    @Override
+    public void remove(int position, int count) {}
+
+    @Override
+    public void move(int from, int to) {}
+
+    @Override
+    public void invalidate(int position, int count) {
+        sync();
+        for(int i = Math.max(position, 0); i < Math.min(position + count, size()); i++) {
+            update(filter.select(i), 0);
+        }
+    }
+
+    @Override
+    public int getRuns(int[] lengths, int[] heights) {
+        // Heights by underlying position don't fit the runs of visible rows which are saved.
+        return -1;
+    }
+
+    @Override
+    public void setRuns(int[] lengths, int[] heights, int runs) {}
+
+    // Brings the trees in line with the filter, adding or taking out the rows whose bits flipped.
+    private void sync() {
+        if(seenVersion == filter.version) {
+            return;
+        }
+        seenVersion = filter.version;
+        for(int word = 0; word < seen.length; word++) {
+            long flipped = seen[word] ^ filter.words[word];
+            seen[word] = filter.words[word];
+            for(; flipped != 0; flipped &= flipped - 1) {
+                int source = (word << 6) + Long.numberOfTrailingZeros(flipped);
+                if(heights[source] != 0) {
+                    boolean visible = (seen[word] & (1L << source)) != 0;
+                    add(source, visible ? heights[source] : -heights[source], visible ? 1 : -1);
+                }
+            }
+        }
+    }
+
+    // Sets a height (0 for unmeasured), counting it in the trees if the row is visible.
+    private void update(int source, int height) {
+        int previous = heights[source];
+        if(previous == height) {
+            return;
+        }
+        heights[source] = height;
+        if((seen[source >>> 6] & (1L << source)) != 0) {
+            add(source, height - previous, (height == 0 ? 0 : 1) - (previous == 0 ? 0 : 1));
+        }
+    }
+
+    private void add(int source, long height, int count) {
+        measuredHeight += height;
+        measuredCount += count;
+        for(int i = source + 1; i <= heights.length; i += i & -i) {
+            heightTree[i] += height;
+            countTree[i] += count;
+        }
+    }
+}
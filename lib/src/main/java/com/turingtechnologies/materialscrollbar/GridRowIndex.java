@@ -0,0 +1,171 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+
+import java.util.Arrays;
+
+/*
+ * The rows of a GridLayoutManager, worked out from its actual SpanSizeLookup rather than assuming
+ * that every row holds spanCount items. Stores the first position of every row, so that both the
+ * row of a position and the first position of a row are found in O(log rows).
+ *
+ * Rows are grouped the same way GridLayoutManager groups them: an item starts a new row if it
+ * doesn't fit in what is left of the current one. That is accumulated from a known row start
+ * instead of asking the lookup for getSpanGroupIndex(), because GridLayoutManager clears that cache
+ * whenever the adapter changes and rebuilding it costs O(position).
+ *
+ * When items change, only the rows from the one containing the change are laid out again, and
+ * only until they line up with the old rows once more. The remaining rows are shifted.
+ */
+class GridRowIndex {
+
+    private GridLayoutManager.SpanSizeLookup lookup;
+    private int spanCount;
+    private int itemCount = -1;
+    // The first position of every row.
+    private int[] rowStart = new int[16];
+    private int rows;
+    private int[] fresh = new int[16];
+
+    /**
+     * Rebuilds the rows if the lookup, span count or item count have changed since last time.
+     */
+    void sync(GridLayoutManager layoutManager, int itemCount) {
+        sync(layoutManager.getSpanSizeLookup(), layoutManager.getSpanCount(), itemCount);
+    }
+
+    void sync(GridLayoutManager.SpanSizeLookup lookup, int spanCount, int itemCount) {
+        if(lookup != this.lookup || spanCount != this.spanCount || itemCount != this.itemCount) {
+            this.lookup = lookup;
+            this.spanCount = spanCount;
+            this.itemCount = itemCount;
+            rows = 0;
+            update(0, Integer.MAX_VALUE, 0);
+        }
+    }
+
+    boolean isBuilt() {
+        return lookup != null;
+    }
+
+    int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return The row which contains the position.
+     */
+    int getRowForPosition(int position) {
+        if(rows == 0) {
+            return 0;
+        }
+        int row = Arrays.binarySearch(rowStart, 0, rows, position);
+        return row >= 0 ? row : Math.max(-row - 2, 0);
+    }
+
+    /**
+     * @return The first position in the row.
+     */
+    int getFirstPositionInRow(int row) {
+        if(rows == 0) {
+            return 0;
+        }
+        return rowStart[Math.max(0, Math.min(row, rows - 1))];
+    }
+
+    void onItemRangeInserted(int positionStart, int itemCount) {
+        if(isBuilt()) {
+            this.itemCount += itemCount;
+            update(positionStart, positionStart, itemCount);
+        }
+    }
+
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        if(isBuilt()) {
+            this.itemCount -= itemCount;
+            update(positionStart, positionStart + itemCount, -itemCount);
+        }
+    }
+
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        if(isBuilt()) {
+            update(positionStart, positionStart + itemCount, 0);
+        }
+    }
+
+    void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        onItemRangeChanged(Math.min(fromPosition, toPosition), Math.abs(fromPosition - toPosition) + itemCount);
+    }
+
+    /**
+     * Forces the rows to be rebuilt on the next sync().
+     */
+    void onChanged() {
+        itemCount = -1;
+    }
+
+    /*
+     * The items in [start, oldEnd) have changed, and the old items from oldEnd onwards now sit delta
+     * positions further down. Lays out rows from the row containing start - 1, as items may now fit
+     * on the end of it, until a row begins where an old one did, then shifts the rest of the old rows.
+     */
+    private void update(int start, int oldEnd, int delta) {
+        int firstRow = Math.min(getRowForPosition(Math.max(start - 1, 0)), rows);
+        int position = firstRow < rows ? rowStart[firstRow] : 0;
+        int oldRow = firstRow;
+        int resyncRow = rows;
+        int count = 0;
+        while(position < itemCount) {
+            if(position >= oldEnd + delta) {
+                while(oldRow < rows && rowStart[oldRow] < position - delta) {
+                    oldRow++;
+                }
+                if(oldRow < rows && rowStart[oldRow] == position - delta) {
+                    resyncRow = oldRow;
+                    break;
+                }
+            }
+            if(count == fresh.length) {
+                fresh = Arrays.copyOf(fresh, count * 2);
+            }
+            fresh[count++] = position;
+            int used = 0;
+            while(position < itemCount) {
+                int size = Math.min(lookup.getSpanSize(position), spanCount);
+                if(used > 0 && used + size > spanCount) {
+                    break;
+                }
+                used += size;
+                position++;
+            }
+        }
+
+        int tail = resyncRow < rows ? rows - resyncRow : 0;
+        int total = firstRow + count + tail;
+        if(total > rowStart.length) {
+            rowStart = Arrays.copyOf(rowStart, Math.max(total, rowStart.length * 2));
+        }
+        System.arraycopy(rowStart, resyncRow, rowStart, firstRow + count, tail);
+        for(int row = firstRow + count; row < total; row++) {
+            rowStart[row] += delta;
+        }
+        System.arraycopy(fresh, 0, rowStart, firstRow, count);
+        rows = total;
+    }
+}
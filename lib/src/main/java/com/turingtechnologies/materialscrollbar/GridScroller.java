@@ -0,0 +1,117 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/*
+ * MeasuredScroller for a GridLayoutManager. The index holds one height per row rather than per
+ * item, the height of a row being that of its tallest child. Which items share a row comes from
+ * the GridRowIndex kept by ScrollingUtilities, which is updated before this is told about changes
+ * to the adapter.
+ */
+class GridScroller extends MeasuredScroller {
+
+    GridScroller(MaterialScrollBar msb, HeightIndex index) {
+        super(msb, index);
+    }
+
+    @Override
+    void measureChildren() {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        GridRowIndex rows = materialScrollBar.scrollUtils.getGridRows();
+        if(rows == null) {
+            return;
+        }
+        if(rows.getRowCount() != index.size()) {
+            reset(rows.getRowCount());
+        }
+        int row = -1;
+        int height = 0;
+        for(int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            if(position == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            int childRow = rows.getRowForPosition(position);
+            if(childRow != row) {
+                index.setHeight(row, height);
+                row = childRow;
+                height = 0;
+            }
+            height = Math.max(height, Utils.getRowHeight(recyclerView.getLayoutManager(), child));
+        }
+        index.setHeight(row, height);
+    }
+
+    @Override
+    void onItemRangeInserted(int positionStart, int itemCount) {
+        onRowsChanged(positionStart);
+    }
+
+    @Override
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        onRowsChanged(positionStart);
+    }
+
+    @Override
+    void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        onRowsChanged(Math.min(fromPosition, toPosition));
+    }
+
+    @Override
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        onRowsChanged(positionStart);
+    }
+
+    @Override
+    void onChanged() {
+        reset(0);
+    }
+
+    @Override
+    int getRowCount() {
+        GridRowIndex rows = materialScrollBar.scrollUtils.getGridRows();
+        return rows == null ? -1 : rows.getRowCount();
+    }
+
+    // Grows or shrinks the index to the new number of rows around the first row that changed.
+    private void onRowsChanged(int positionStart) {
+        GridRowIndex rows = materialScrollBar.scrollUtils.gridRows;
+        int row = rows.getRowForPosition(positionStart);
+        int delta = rows.getRowCount() - index.size();
+        if(delta > 0) {
+            index.insert(row, delta);
+        } else if(delta < 0) {
+            index.remove(row, -delta);
+        }
+        index.invalidate(row, Math.max(delta, 0) + 1);
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        return this.index.getDepth(materialScrollBar.scrollUtils.gridRows.getRowForPosition(index));
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        return materialScrollBar.scrollUtils.gridRows.getFirstPositionInRow(super.getLargeItemIndexForScroll(progress));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.BitSet;
+
+/*
+ * Used for MaterialScrollBar.GeometryMode.ESTIMATED. Keeps a running average of the measured height
+ * of each view type along with how many items of each type the adapter holds, and from those
+ * estimates the average row height of the whole list.
+ *
+ * The adapter is only asked for view types when the item count changes, and for long lists only a
+ * sample of them. Each position is measured once, the first time it's seen, so rows which scroll
+ * back into view don't weigh the average towards themselves.
+ */
+class HeightEstimator {
+
+    // Past this many items, view types are sampled at evenly spaced positions rather than all asked for.
+    static final int MAX_COUNTED = 4096;
+
+    private static class TypeStats {
+        int count;
+        int measured;
+        long measuredHeight;
+    }
+
+    private SparseArray<TypeStats> types = new SparseArray<>();
+    private int itemCount = -1;
+    private int measured;
+    private long measuredHeight;
+    private int averageHeight;
+    private boolean dirty;
+
+    // The positions which have already been measured.
+    private BitSet seen = new BitSet();
+
+    /**
+     * Counts how many items of each view type the adapter holds. Measurements are kept, but every
+     * position may be measured again.
+     */
+    void countTypes(RecyclerView.Adapter adapter) {
+        for(int i = 0; i < types.size(); i++) {
+            types.valueAt(i).count = 0;
+        }
+        int count = adapter.getItemCount();
+        int samples = Math.min(count, MAX_COUNTED);
+        for(int i = 0; i < samples; i++) {
+            getStats(adapter.getItemViewType((int) ((long) i * count / samples))).count++;
+        }
+        itemCount = samples;
+        scaleCounts(count);
+        seen.clear();
+    }
+
+    void onItemRangeInserted(RecyclerView.Adapter adapter, int positionStart, int itemCount) {
+        if(this.itemCount < 0) {
+            return;
+        }
+        for(int i = positionStart; i < positionStart + itemCount; i++) {
+            getStats(adapter.getItemViewType(i)).count++;
+        }
+        this.itemCount += itemCount;
+        shiftSeen(positionStart, positionStart + itemCount);
+        dirty = true;
+    }
+
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        if(this.itemCount < 0) {
+            return;
+        }
+        // The types of the removed items can no longer be asked for, so they are taken from every
+        // type in proportion to how common it is.
+        scaleCounts(Math.max(this.itemCount - itemCount, 0));
+        shiftSeen(positionStart + itemCount, positionStart);
+    }
+
+    /**
+     * Forces the view types to be counted again the next time the children are measured.
+     */
+    void onChanged() {
+        itemCount = -1;
+    }
+
+    /**
+     * Records the heights of the children which have come into view since the last call.
+     */
+    void measureChildren(RecyclerView recyclerView) {
+        if(recyclerView.getAdapter().getItemCount() != itemCount) {
+            countTypes(recyclerView.getAdapter());
+        }
+        for(int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            if(position == RecyclerView.NO_POSITION || seen.get(position)) {
+                continue;
+            }
+            int height = Utils.getRowHeight(recyclerView.getLayoutManager(), child);
+            if(height > 0) {
+                seen.set(position);
+                TypeStats stats = getStats(recyclerView.getChildViewHolder(child).getItemViewType());
+                stats.measured++;
+                stats.measuredHeight += height;
+                measured++;
+                measuredHeight += height;
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * @return The estimated average height of a row, or 0 if nothing has been measured yet.
+     */
+    int getAverageHeight() {
+        if(dirty) {
+            dirty = false;
+            if(measured == 0 || itemCount <= 0) {
+                averageHeight = 0;
+            } else {
+                // Types which haven't been seen yet are assumed to be of the overall average height.
+                long fallback = measuredHeight / measured;
+                long total = 0;
+                for(int i = 0; i < types.size(); i++) {
+                    TypeStats stats = types.valueAt(i);
+                    total += stats.count * (stats.measured == 0 ? fallback : stats.measuredHeight / stats.measured);
+                }
+                averageHeight = (int) (total / itemCount);
+            }
+        }
+        return averageHeight;
+    }
+
+    void saveState(MaterialScrollBar.SavedState state) {
+        if(itemCount < 0) {
+            return;
+        }
+        state.viewTypes = new int[types.size()];
+        state.typeCounts = new int[types.size()];
+        state.typeMeasured = new int[types.size()];
+        state.typeMeasuredHeights = new long[types.size()];
+        for(int i = 0; i < types.size(); i++) {
+            TypeStats stats = types.valueAt(i);
+            state.viewTypes[i] = types.keyAt(i);
+            state.typeCounts[i] = stats.count;
+            state.typeMeasured[i] = stats.measured;
+            state.typeMeasuredHeights[i] = stats.measuredHeight;
+        }
+    }
+
+    /**
+     * Puts back the statistics saved by saveState(). The caller has checked that the item count
+     * still matches, so the types needn't be counted again.
+     */
+    void restoreState(MaterialScrollBar.SavedState state) {
+        if(state.viewTypes == null) {
+            return;
+        }
+        types.clear();
+        measured = 0;
+        measuredHeight = 0;
+        for(int i = 0; i < state.viewTypes.length; i++) {
+            TypeStats stats = getStats(state.viewTypes[i]);
+            stats.count = state.typeCounts[i];
+            stats.measured = state.typeMeasured[i];
+            stats.measuredHeight = state.typeMeasuredHeights[i];
+            measured += stats.measured;
+            measuredHeight += stats.measuredHeight;
+        }
+        itemCount = state.itemCount;
+        seen.clear();
+        dirty = true;
+    }
+
+    /*
+     * Sets the item count, scaling the count of every type to match. The running total is scaled
+     * rather than each count, so that the rounding evens out and the counts still add up.
+     */
+    private void scaleCounts(int count) {
+        long before = 0;
+        long scaledBefore = 0;
+        for(int i = 0; i < types.size(); i++) {
+            TypeStats stats = types.valueAt(i);
+            before += stats.count;
+            long scaled = itemCount == 0 ? 0 : before * count / itemCount;
+            stats.count = (int) (scaled - scaledBefore);
+            scaledBefore = scaled;
+        }
+        itemCount = count;
+        dirty = true;
+    }
+
+    /*
+     * Moves the seen positions from from onwards so that they start at to instead. Only the set bits
+     * are visited, and there are only as many of those as rows the user has scrolled past.
+     */
+    private void shiftSeen(int from, int to) {
+        int end = seen.length();
+        if(Math.min(from, to) >= end) {
+            return;
+        }
+        BitSet tail = from < end ? seen.get(from, end) : new BitSet();
+        seen.clear(Math.min(from, to), end);
+        for(int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+            seen.set(to + i);
+        }
+    }
+
+    private TypeStats getStats(int viewType) {
+        TypeStats stats = types.get(viewType);
+        if(stats == null) {
+            stats = new TypeStats();
+            types.put(viewType, stats);
+        }
+        return stats;
+    }
+}
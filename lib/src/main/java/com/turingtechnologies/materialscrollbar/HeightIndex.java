@@ -0,0 +1,91 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/*
+ * Storage for the row heights learned by a MeasuredScroller. Rows which haven't been measured
+ * stand in at getEstimate().
+ */
+interface HeightIndex {
+
+    /**
+     * Forgets every measurement and resizes the index.
+     */
+    void reset(int size);
+
+    int size();
+
+    /**
+     * @return The height assumed for rows which have not been measured.
+     */
+    int getEstimate();
+
+    /**
+     * Records the laid out height of a row.
+     */
+    void setHeight(int position, int height);
+
+    /**
+     * @return The measured height of the row, or the estimate if it hasn't been laid out yet.
+     */
+    int getHeight(int position);
+
+    /**
+     * @return The sum of the heights of all of the rows above the given position.
+     */
+    long getDepth(int position);
+
+    long getTotalDepth();
+
+    /**
+     * @return The position of the row which covers the given depth, clamped to the list.
+     */
+    int getPositionForDepth(long depth);
+
+    /**
+     * Adds unmeasured rows at the given position, shifting the rows after them down.
+     */
+    void insert(int position, int count);
+
+    /**
+     * Removes rows, shifting the rows after them up.
+     */
+    void remove(int position, int count);
+
+    /**
+     * Moves a single row, keeping its height.
+     */
+    void move(int from, int to);
+
+    /**
+     * Forgets the heights of a range of rows, for instance because their content has changed.
+     */
+    void invalidate(int position, int count);
+
+    /**
+     * Copies the heights out as runs of rows of equal height, 0 for rows which haven't been
+     * measured.
+     *
+     * @return The number of runs, or -1 if there are more than the arrays can hold.
+     */
+    int getRuns(int[] lengths, int[] heights);
+
+    /**
+     * Replaces every row with runs as returned by getRuns().
+     */
+    void setRuns(int[] lengths, int[] heights, int runs);
+}
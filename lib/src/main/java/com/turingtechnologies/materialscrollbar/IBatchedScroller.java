@@ -0,0 +1,41 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/**
+ * An alternative to {@link ICustomScroller} for adapters which can't answer cheaply for one item
+ * at a time, for instance because the heights come from a database. The bar asks for the depths of
+ * a whole window of items at once and keeps them until the adapter reports a change.
+ */
+public interface IBatchedScroller {
+
+    /**
+     * @param from The first item to fill in.
+     * @param to The item after the last one to fill in.
+     * @param depths Receives the depth of item from + i at index i. The depth of an item is the sum
+     * of the heights of all of the items above it.
+     * @return The sum of the heights of all of the items in the list.
+     */
+    long getDepths(int from, int to, long[] depths);
+
+    /**
+     * @param progress How far down the bar the user is, from 0 to 1.
+     * @return The index of the item which should be scrolled to.
+     */
+    int getItemIndexForScroll(double progress);
+
+}
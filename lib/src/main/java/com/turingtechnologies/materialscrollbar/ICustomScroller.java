@@ -1,5 +1,9 @@
 package com.turingtechnologies.materialscrollbar;
 
+/**
+ * For adapters whose items are of different heights. The bar asks for depths whenever it needs
+ * them, unless {@link #isGeometryCacheable()} is overridden to let it remember them.
+ */
 public interface ICustomScroller {
 
     /**
@@ -12,7 +16,8 @@ public interface ICustomScroller {
     /**
      * @return An integer representing the index of the item which should be scrolled to when the
      * user clicks at the specified length down the bar. For example, if "progress" is 0.5F then you
-     * should return the index of the item which is half-way down the recyclerView.
+     * should return the index of the item which is half-way down the recyclerView. Progress is a
+     * share of how far the list can scroll, which is its total depth less what fits on screen.
      */
     int getItemIndexForScroll(float progress);
 
@@ -21,4 +26,47 @@ public interface ICustomScroller {
      */
     int getTotalDepth();
 
+    /**
+     * The bar always calls this rather than {@link #getDepthForItem(int)}. Override it if the
+     * depth of an item can be more than {@link Integer#MAX_VALUE} pixels.
+     *
+     * @param index The index of the relevant element.
+     * @return The depth of the item within the recyclerView in pixels.
+     */
+    default long getLargeDepthForItem(int index) {
+        return getDepthForItem(index);
+    }
+
+    /**
+     * The bar always calls this rather than {@link #getItemIndexForScroll(float)}. Override it if
+     * the list has more items than a float can tell apart (around 16 million).
+     *
+     * @param progress How far down the bar the user is, from 0 to 1.
+     * @return The index of the item which should be scrolled to.
+     */
+    default int getLargeItemIndexForScroll(double progress) {
+        return getItemIndexForScroll((float) progress);
+    }
+
+    /**
+     * The bar always calls this rather than {@link #getTotalDepth()}. Override it if the list can
+     * be more than {@link Integer#MAX_VALUE} pixels tall.
+     *
+     * @return The sum of the heights of all the views in the recyclerView.
+     */
+    default long getLargeTotalDepth() {
+        return getTotalDepth();
+    }
+
+    /**
+     * Return true if the depths only change when the adapter notifies the bar of a change, or when
+     * {@link MaterialScrollBar#notifyGeometryChanged()} is called. The bar then remembers them in
+     * between rather than asking every time.
+     *
+     * @return Whether the bar may remember the depths. False by default.
+     */
+    default boolean isGeometryCacheable() {
+        return false;
+    }
+
 }
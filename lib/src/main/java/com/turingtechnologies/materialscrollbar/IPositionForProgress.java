@@ -0,0 +1,38 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/**
+ * Used with {@link MaterialScrollBar.GeometryMode#SCROLL_RANGE} to decide which item the bar should
+ * jump to, and which item the indicator should describe, for a given position of the handle.
+ */
+public interface IPositionForProgress {
+
+    /**
+     * Assumes that every item takes up the same share of the list.
+     */
+    IPositionForProgress LINEAR = (progress, itemCount) ->
+            (int) Math.max(0, Math.min(itemCount - 1, (long) (progress * itemCount)));
+
+    /**
+     * @param progress How far down the bar the handle is, from 0 to 1.
+     * @param itemCount The number of items in the adapter.
+     * @return The index of the corresponding item.
+     */
+    int getPositionForProgress(double progress, int itemCount);
+
+}
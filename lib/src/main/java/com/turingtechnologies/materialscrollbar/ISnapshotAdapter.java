@@ -0,0 +1,38 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/**
+ * For adapters whose data is replaced from a worker thread. The bar reads item counts and indicator
+ * text from the latest snapshot instead of from the adapter, so a drag never sees a list which is
+ * halfway through being swapped. This includes the geometry modes which measure rows, which skip
+ * rows laid out past the end of the snapshot.
+ *
+ * The usual way to implement this is to keep a {@link DataSnapshot.Reference} and publish to it
+ * whenever new data is ready.
+ */
+public interface ISnapshotAdapter {
+
+    /**
+     * Called on the main thread, possibly on every frame of a drag, so it should only read a
+     * reference.
+     *
+     * @return The latest snapshot of the adapter's data, or null to use the adapter itself.
+     */
+    DataSnapshot getSnapshot();
+
+}
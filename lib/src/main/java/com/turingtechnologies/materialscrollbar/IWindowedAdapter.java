@@ -0,0 +1,47 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/**
+ * For adapters over paged data, which only hold some of their items at a time and show placeholders
+ * for the rest. getItemCount() should include the placeholders, as it does with the paging library.
+ *
+ * Positions are the same ones that the indicator's interface is asked about.
+ */
+public interface IWindowedAdapter {
+
+    /**
+     * @param element of the adapter.
+     * @return Whether the element has been loaded. The indicator only asks about loaded elements.
+     */
+    boolean isLoaded(int element);
+
+    /**
+     * @return What the indicator should show for elements which haven't been loaded, or null to
+     * leave it as it is.
+     */
+    SectionIndex getSectionIndex();
+
+    /**
+     * Called while the bar is being dragged, once the target has rested on an element which hasn't
+     * been loaded for a moment, so that it can be loaded before the bar is let go.
+     *
+     * @param element of the adapter to load around.
+     */
+    void onLoadAhead(int element);
+
+}
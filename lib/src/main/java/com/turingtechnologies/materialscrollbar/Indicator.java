@@ -28,6 +28,7 @@ import android.widget.TextView;
 import androidx.annotation.ColorInt;
 import androidx.core.content.ContextCompat;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.ConcatAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -48,6 +49,9 @@ public abstract class Indicator<T, U extends Indicator> extends RelativeLayout{
     private boolean rtl;
     private int size;
     private Class<T> adapterClass;
+    // What the text was last taken from, when it came from a snapshot.
+    private DataSnapshot textSnapshot;
+    private int textSection;
 
     public Indicator(Context context, Class<T> adapter) {
         super(context);
@@ -133,13 +137,63 @@ public abstract class Indicator<T, U extends Indicator> extends RelativeLayout{
     void setText(int section) {
         String newText;
         try{
-            T adapter = (T) materialScrollBar.recyclerView.getAdapter();
+            RecyclerView.Adapter adapter = materialScrollBar.recyclerView.getAdapter();
             if  (adapter == null) {
                 Log.e("MaterialScrollBarLib", "The adapter for your recyclerView has not been set; " +
                         "skipping indicator layout.");
                 return;
             }
-            newText = getTextElement(section, adapter);
+            if(materialScrollBar.positionFilter != null) {
+                section = materialScrollBar.positionFilter.select(section);
+                if(section < 0) {
+                    return;
+                }
+            }
+            //With a ConcatAdapter, each child describes its own items.
+            ConcatSegments segments = materialScrollBar.scrollUtils.getConcatSegments();
+            if(segments != null && !isDescribable(adapter)) {
+                if(segments.size() == 0) {
+                    return;
+                }
+                int segment = segments.getSegment(section);
+                adapter = segments.getAdapter(segment);
+                section -= segments.getStart(segment);
+                if(!isDescribable(adapter)) {
+                    return;
+                }
+            }
+            //Data swapped in from another thread is read from the latest snapshot, which never changes
+            //underneath us, so the same item needn't be described twice.
+            Object describer = adapter;
+            DataSnapshot snapshot = adapter instanceof ISnapshotAdapter ? ((ISnapshotAdapter) adapter).getSnapshot() : null;
+            if(snapshot != null) {
+                if(snapshot.getItemCount() == 0) {
+                    return;
+                }
+                section = Math.min(section, snapshot.getItemCount() - 1);
+                if(snapshot == textSnapshot && section == textSection) {
+                    return;
+                }
+                if(adapterClass.isInstance(snapshot)) {
+                    describer = snapshot;
+                }
+            }
+            textSnapshot = null;
+            if(!adapterClass.isInstance(describer)) {
+                return;
+            }
+            //Paged adapters can only describe what they have loaded, so fall back to their sections.
+            if(describer instanceof IWindowedAdapter && !((IWindowedAdapter) describer).isLoaded(section)) {
+                SectionIndex sections = ((IWindowedAdapter) describer).getSectionIndex();
+                newText = sections == null ? null : sections.getLabel(section);
+                if(newText == null) {
+                    return;
+                }
+            } else {
+                newText = getTextElement(section, (T) describer);
+            }
+            textSnapshot = snapshot;
+            textSection = section;
         } catch (IndexOutOfBoundsException e) {
             newText = "Error";
         }
@@ -161,7 +215,7 @@ public abstract class Indicator<T, U extends Indicator> extends RelativeLayout{
                     "skipping indicator layout.");
             return;
         }
-        if(!adapterClass.isInstance(adapter)) {
+        if(!isDescribable(adapter) && !hasDescribableChild(adapter)) {
             throw new IllegalArgumentException(
                     "In order to add this indicator, the adapter for your recyclerView, "
                             + adapter.getClass().getName()
@@ -169,6 +223,25 @@ public abstract class Indicator<T, U extends Indicator> extends RelativeLayout{
         }
     }
 
+    //A ConcatAdapter is fine as long as one of its children can describe its items.
+    private boolean hasDescribableChild(RecyclerView.Adapter adapter) {
+        if(!(adapter instanceof ConcatAdapter)) {
+            return false;
+        }
+        for(RecyclerView.Adapter child : ((ConcatAdapter) adapter).getAdapters()) {
+            if(isDescribable(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Adapters with snapshots are described by their snapshots instead, which can't be checked until
+    //one has been published.
+    private boolean isDescribable(RecyclerView.Adapter adapter) {
+        return adapterClass.isInstance(adapter) || adapter instanceof ISnapshotAdapter;
+    }
+
     public U setTypeface(Typeface typeface) {
         textView.setTypeface(typeface);
         return (U)this;
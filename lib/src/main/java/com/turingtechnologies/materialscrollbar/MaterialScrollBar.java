@@ -24,18 +24,24 @@ import android.content.res.TypedArray;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import androidx.annotation.ColorInt;
 import androidx.annotation.ColorRes;
 import androidx.core.content.ContextCompat;
 import androidx.core.view.ViewCompat;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import androidx.recyclerview.widget.ConcatAdapter;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.view.animation.Animation;
 import android.view.animation.TranslateAnimation;
 import android.widget.RelativeLayout;
@@ -90,15 +96,33 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
     ScrollingUtilities scrollUtils = new ScrollingUtilities(this);
     SwipeRefreshLayout swipeRefreshLayout;
     private ArrayList<RecyclerView.OnScrollListener> listeners = new ArrayList<>();
+    private RecyclerView.Adapter observedAdapter;
+    private AdapterObserver adapterObserver = new AdapterObserver();
+    private ScrollListener scrollListener = new ScrollListener();
+    private PageGeometryCache pageCache = new PageGeometryCache();
+    private static final int LOAD_AHEAD_DELAY = 150; //ms
+    private IWindowedAdapter loadAheadAdapter;
+    private int loadAheadPosition;
+    private final Runnable loadAhead = () -> {
+        if(loadAheadAdapter != null) {
+            loadAheadAdapter.onLoadAhead(loadAheadPosition);
+            loadAheadAdapter = null;
+        }
+    };
 
     //Misc
     private OnLayoutChangeListener indicatorLayoutListener;
-    private float previousScrollPercent = 0;
+    private double previousScrollPercent = 0;
     Boolean draggableFromAnywhere = false;
     ArrayList<Runnable> onAttach = new ArrayList<>();
     private boolean attached = false;
     ScrollMode scrollMode;
-    float currentScrollPercent = 0F;
+    GeometryMode geometryMode = GeometryMode.UNIFORM;
+    private long geometryVersion;
+    private SavedState pendingGeometry;
+    private IPositionForProgress positionForProgress = IPositionForProgress.LINEAR;
+    PositionFilter positionFilter;
+    double currentScrollPercent = 0;
 
     //CHAPTER I - INITIAL SETUP
 
@@ -150,6 +174,7 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         }
 
         scrollMode = a.getInt(R.styleable.MaterialScrollBar_msb_scrollMode, 0) == 0 ? ScrollMode.FIRST_VISIBLE : ScrollMode.LAST_ELEMENT;
+        geometryMode = GeometryMode.values()[a.getInt(R.styleable.MaterialScrollBar_msb_geometryMode, 0)];
     }
 
     //Sets up bar.
@@ -206,17 +231,61 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         }
     }
 
+    /**
+     * Sets the RecyclerView which the bar scrolls. Once the bar has one it can be moved to another,
+     * so that one bar can serve every page of a ViewPager. What the bar has learned about the last
+     * few RecyclerViews is kept, so that the handle is right straight away when it comes back to one.
+     *
+     * @param rv The RecyclerView to scroll.
+     */
     public T setRecyclerView(RecyclerView rv) {
-        if(seekId != 0) {
+        if(recyclerView == null && seekId != 0) {
             throw new IllegalStateException("There is already a recyclerView set by XML.");
-        } else if(recyclerView != null) {
-            throw new IllegalStateException("There is already a recyclerView set.");
+        } else if(recyclerView == null) {
+            recyclerView = rv;
+            generalSetup();
+        } else if(recyclerView != rv) {
+            retarget(rv);
         }
-        recyclerView = rv;
-        generalSetup();
         return (T)this;
     }
 
+    //Moves the bar to another RecyclerView, putting aside what it knows about the current one.
+    private void retarget(RecyclerView rv) {
+        recyclerView.removeOnScrollListener(scrollListener);
+        if(observedAdapter != null) {
+            observedAdapter.unregisterAdapterDataObserver(adapterObserver);
+        }
+        pageCache.put(recyclerView, new PageGeometryCache.Page(scrollUtils, positionFilter, observedAdapter, geometryMode, geometryVersion));
+        observedAdapter = null;
+        pendingGeometry = null;
+        removeCallbacks(loadAhead);
+        loadAheadAdapter = null;
+        scrollListener.cancel();
+
+        recyclerView = rv;
+        recyclerView.setVerticalScrollBarEnabled(false);
+        recyclerView.addOnScrollListener(scrollListener);
+
+        PageGeometryCache.Page page = pageCache.take(rv);
+        positionFilter = page == null ? null : page.positionFilter;
+        if(page != null && page.isValidFor(rv.getAdapter(), geometryMode, geometryVersion)) {
+            scrollUtils = page.scrollUtils;
+            observeAdapter();
+        } else {
+            scrollUtils = new ScrollingUtilities(this);
+            checkCustomScrolling();
+        }
+        if(indicator != null) {
+            indicator.testAdapter(rv.getAdapter());
+        }
+        previousScrollPercent = 0;
+        if(ViewCompat.isAttachedToWindow(this) && rv.getAdapter() != null && rv.getChildCount() > 0) {
+            scrollUtils.scrollHandleAndIndicator();
+        }
+        requestLayout();
+    }
+
     //Waits for all of the views to be attached to the window and then implements general setup.
     //Waiting must occur so that the relevant recyclerview can be found.
     @Override
@@ -225,7 +294,7 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
 
         attached = true;
 
-        if(seekId != 0) {
+        if(seekId != 0 && recyclerView == null) {
             try {
                 recyclerView = (RecyclerView) Utils.findNearestNeighborWithID(seekId, this);
                 if (recyclerView == null) {
@@ -244,10 +313,19 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         }
     }
 
+    //Lets go of the RecyclerViews the bar was moved away from.
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        pageCache.clear();
+        scrollListener.cancel();
+    }
+
     //General setup.
     private void generalSetup() {
         recyclerView.setVerticalScrollBarEnabled(false); // disable any existing scrollbars
-        recyclerView.addOnScrollListener(new ScrollListener()); // lets us read when the recyclerView scrolls
+        recyclerView.addOnScrollListener(scrollListener); // lets us read when the recyclerView scrolls
 
         setTouchIntercept(); // catches touches on the bar
 
@@ -291,7 +369,7 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         }
     }
 
-    boolean isScrollChangeLargeEnoughForFastScroll(float currentScrollPercent) {
+    boolean isScrollChangeLargeEnoughForFastScroll(double currentScrollPercent) {
         return Math.abs(currentScrollPercent - previousScrollPercent) > fastScrollSnapPercent;
     }
 
@@ -307,7 +385,10 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         }
 
         if(!isInEditMode()) {
-            scrollUtils.scrollHandleAndIndicator();
+            //Most layout passes don't move anything, so only redo the handle if they did.
+            if(scrollUtils.isPlacementDirty()) {
+                scrollUtils.scrollHandleAndIndicator();
+            }
             if(hiddenByNotEnoughElements = (scrollUtils.getAvailableScrollHeight() <= 0)) {
                 handleTrack.setVisibility(GONE);
                 handleThumb.setVisibility(GONE);
@@ -360,6 +441,60 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         setMeasuredDimension(width, height);
     }
 
+    // Saves whatever geometry has been learned so that it needn't be learned again after a
+    // configuration change or process restore.
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.geometryMode = geometryMode.ordinal();
+        state.geometryVersion = geometryVersion;
+        state.itemCount = -1;
+        if(recyclerView != null && recyclerView.getAdapter() != null) {
+            state.itemCount = recyclerView.getAdapter().getItemCount();
+            if(scrollUtils.customScroller instanceof MeasuredScroller) {
+                ((MeasuredScroller) scrollUtils.customScroller).saveState(state);
+            }
+            if(scrollUtils.estimator != null) {
+                scrollUtils.estimator.saveState(state);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if(!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        super.onRestoreInstanceState(((SavedState) state).getSuperState());
+        pendingGeometry = (SavedState) state;
+        restoreGeometry();
+    }
+
+    //Applies saved geometry once the scrollers have been set up and the adapter has its items. It
+    //is only used if nothing has changed which would make it wrong.
+    private void restoreGeometry() {
+        if(pendingGeometry == null || recyclerView == null || recyclerView.getAdapter() == null
+                || observedAdapter != recyclerView.getAdapter()) {
+            return;
+        }
+        int itemCount = recyclerView.getAdapter().getItemCount();
+        if(itemCount == 0) {
+            return;
+        }
+        if(pendingGeometry.geometryMode == geometryMode.ordinal() && pendingGeometry.geometryVersion == geometryVersion
+                && pendingGeometry.itemCount == itemCount) {
+            if(scrollUtils.customScroller instanceof MeasuredScroller) {
+                ((MeasuredScroller) scrollUtils.customScroller).restoreState(pendingGeometry);
+            }
+            if(scrollUtils.estimator != null) {
+                scrollUtils.estimator.restoreState(pendingGeometry);
+            }
+        }
+        pendingGeometry = null;
+    }
+
     //CHAPTER II - ABSTRACTION FOR FLAVOUR DIFFERENTIATION
 
     abstract void setTouchIntercept();
@@ -381,8 +516,132 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
     //CHAPTER III - CUSTOMISATION METHODS
 
     private void checkCustomScrollingInterface() {
+        observeAdapter();
+        scrollUtils.estimator = geometryMode == GeometryMode.ESTIMATED ? new HeightEstimator() : null;
+        scrollUtils.positionForProgress = null;
         if((recyclerView.getAdapter() instanceof  ICustomScroller)) {
-            scrollUtils.customScroller = (ICustomScroller) recyclerView.getAdapter();
+            scrollUtils.customScroller = new MemoizedScroller((ICustomScroller) recyclerView.getAdapter());
+        } else if(recyclerView.getAdapter() instanceof IBatchedScroller) {
+            scrollUtils.customScroller = new BatchedScroller(this, (IBatchedScroller) recyclerView.getAdapter());
+        } else if(recyclerView.getAdapter() instanceof ConcatAdapter && geometryMode == GeometryMode.UNIFORM) {
+            scrollUtils.customScroller = new ConcatScroller(this);
+        } else if(geometryMode == GeometryMode.MEASURED || geometryMode == GeometryMode.COMPRESSED) {
+            HeightIndex index = geometryMode == GeometryMode.MEASURED ? new FenwickHeightIndex(0) : new RunLengthHeightIndex(0);
+            RecyclerView.LayoutManager manager = recyclerView.getLayoutManager();
+            if(positionFilter != null && !(manager instanceof GridLayoutManager) && !(manager instanceof StaggeredGridLayoutManager)) {
+                // Heights are kept by position in the underlying list, so changing the filter keeps them.
+                index = new FilteredHeightIndex(positionFilter);
+            } else if(manager instanceof LinearLayoutManager) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if(layoutManager.getStackFromEnd() && !layoutManager.getReverseLayout()) {
+                    // Older items will be inserted at the top, so the index is kept bottom up.
+                    index = new ReversedHeightIndex(index);
+                }
+            }
+            if(recyclerView.getLayoutManager() instanceof GridLayoutManager) {
+                scrollUtils.customScroller = new GridScroller(this, index);
+            } else if(recyclerView.getLayoutManager() instanceof StaggeredGridLayoutManager) {
+                scrollUtils.customScroller = new StaggeredGridScroller(this, index);
+            } else {
+                scrollUtils.customScroller = new MeasuredScroller(this, index);
+            }
+        } else if(geometryMode == GeometryMode.SCROLL_RANGE) {
+            scrollUtils.customScroller = null;
+            scrollUtils.positionForProgress = positionForProgress;
+        } else {
+            scrollUtils.customScroller = null;
+        }
+        restoreGeometry();
+    }
+
+    /**
+     * Decides which item to jump to and to describe in the indicator when the bar is in
+     * {@link GeometryMode#SCROLL_RANGE}. Defaults to {@link IPositionForProgress#LINEAR}.
+     */
+    public T setPositionForProgress(IPositionForProgress positionForProgress) {
+        this.positionForProgress = positionForProgress;
+        if(scrollUtils.positionForProgress != null) {
+            scrollUtils.positionForProgress = positionForProgress;
+        }
+        return (T)this;
+    }
+
+    //Keeps the learned geometry in step with changes to the adapter's data.
+    private void observeAdapter() {
+        if(observedAdapter == recyclerView.getAdapter()) {
+            return;
+        }
+        if(observedAdapter != null) {
+            observedAdapter.unregisterAdapterDataObserver(adapterObserver);
+        }
+        observedAdapter = recyclerView.getAdapter();
+        if(observedAdapter != null) {
+            observedAdapter.registerAdapterDataObserver(adapterObserver);
+        }
+    }
+
+    /**
+     * Chooses how the bar works out the height of the list. Ignored if the adapter implements
+     * {@link ICustomScroller} or {@link IBatchedScroller}.
+     *
+     * @param mode The {@link GeometryMode} to use.
+     */
+    public T setGeometryMode(GeometryMode mode) {
+        geometryMode = mode;
+        if(recyclerView != null && ViewCompat.isAttachedToWindow(this)) {
+            checkCustomScrollingInterface();
+        }
+        return (T)this;
+    }
+
+    /**
+     * For lists which are filtered in place. The handle follows the filtered list as the adapter
+     * presents it, but the indicator is asked about each item's position in the underlying list,
+     * so the adapter can describe items without knowing about the filter. To change which items are
+     * visible, change the filter and notify the adapter as usual. In {@link GeometryMode#MEASURED}
+     * and {@link GeometryMode#COMPRESSED} with a LinearLayoutManager, the heights learned are kept by
+     * position in the underlying list, so changing the filter keeps them; keep using the same filter
+     * rather than setting a new one. In other modes the geometry follows the adapter's notifications
+     * as it would without a filter. The filter belongs to the current RecyclerView, and goes with it
+     * if the bar is moved to another.
+     *
+     * @param filter The items the adapter is showing, or null if it shows everything.
+     */
+    public T setPositionFilter(PositionFilter filter) {
+        if(filter == positionFilter) {
+            return (T)this;
+        }
+        positionFilter = filter;
+        if(recyclerView != null && ViewCompat.isAttachedToWindow(this)
+                && (geometryMode == GeometryMode.MEASURED || geometryMode == GeometryMode.COMPRESSED)) {
+            checkCustomScrollingInterface();
+        }
+        return (T)this;
+    }
+
+    /**
+     * The geometry learned in {@link GeometryMode#MEASURED}, {@link GeometryMode#COMPRESSED} and
+     * {@link GeometryMode#ESTIMATED} is saved with the bar's state and reused afterwards if the
+     * adapter still holds the same number of items. If rows can change height without the item
+     * count changing, pass a new version whenever they do so that stale geometry isn't used. The
+     * bar needs an id for its state to be saved.
+     *
+     * @param version Any value which changes whenever the heights of the rows do.
+     */
+    public T setGeometryVersion(long version) {
+        geometryVersion = version;
+        return (T)this;
+    }
+
+    /**
+     * Tells the bar that the adapter's {@link ICustomScroller} now gives different answers even though
+     * the adapter's data hasn't changed, for instance because its geometry has been rebuilt in the
+     * background. Anything the bar remembered is dropped and the handle is moved.
+     */
+    public void notifyGeometryChanged() {
+        scrollUtils.invalidateCaches();
+        if(recyclerView != null && recyclerView.getAdapter() != null && recyclerView.getChildCount() > 0) {
+            scrollUtils.scrollHandleAndIndicator();
         }
     }
 
@@ -685,6 +944,35 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         return isDragging;
     }
 
+    //Asks an IWindowedAdapter to load around the drag target once it has rested on an unloaded item
+    //for LOAD_AHEAD_DELAY. The position is looked up the same way as for the indicator.
+    void checkLoadAhead(int position) {
+        if(!isDragging || recyclerView.getAdapter() == null) {
+            return;
+        }
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        if(positionFilter != null) {
+            position = positionFilter.select(position);
+        }
+        ConcatSegments segments = scrollUtils.getConcatSegments();
+        if(segments != null && !(adapter instanceof IWindowedAdapter) && segments.size() > 0 && position >= 0) {
+            int segment = segments.getSegment(position);
+            adapter = segments.getAdapter(segment);
+            position -= segments.getStart(segment);
+        }
+        if(position < 0 || !(adapter instanceof IWindowedAdapter) || ((IWindowedAdapter) adapter).isLoaded(position)) {
+            removeCallbacks(loadAhead);
+            loadAheadAdapter = null;
+            return;
+        }
+        if(adapter != loadAheadAdapter || position != loadAheadPosition) {
+            loadAheadAdapter = (IWindowedAdapter) adapter;
+            loadAheadPosition = position;
+            removeCallbacks(loadAhead);
+            postDelayed(loadAhead, LOAD_AHEAD_DELAY);
+        }
+    }
+
     //CHAPTER IV - MISC METHODS
 
     //Fetch accent color.
@@ -754,7 +1042,7 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         int bottom = recyclerView.getHeight() - Utils.getDP(72, recyclerView.getContext());
         float boundedY = Math.max(top, Math.min(bottom, event.getY() - getHandleOffset()));
 
-        currentScrollPercent = (boundedY - top) / (bottom - top);
+        currentScrollPercent = (double) (boundedY - top) / (bottom - top);
         if(isScrollChangeLargeEnoughForFastScroll(currentScrollPercent) ||
                 currentScrollPercent == 0 || currentScrollPercent == 1) {
             previousScrollPercent = currentScrollPercent;
@@ -790,6 +1078,10 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
             handleThumb.setBackgroundColor(handleOffColor);
         }
 
+        //The bar has been let go, so there is no point in waiting any longer.
+        removeCallbacks(loadAhead);
+        loadAhead.run();
+
         isDragging = false;
     }
 
@@ -798,29 +1090,182 @@ public abstract class MaterialScrollBar<T> extends RelativeLayout {
         return draggableFromAnywhere || (event.getY() >= handleThumb.getY() - Utils.getDP(20, recyclerView.getContext()) && event.getY() <= handleThumb.getY() + handleThumb.getHeight());
     }
 
-    class ScrollListener extends RecyclerView.OnScrollListener {
+    //Nested and programmatic scrolls can report several times a frame, so the bar is only updated
+    //once per frame, just before it is drawn, from wherever the recyclerView ended up. That is still
+    //the frame the content moved in, so the handle doesn't trail behind it.
+    class ScrollListener extends RecyclerView.OnScrollListener implements ViewTreeObserver.OnPreDrawListener {
+        private boolean scheduled;
+        private boolean moved;
+
         @Override
         public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
             super.onScrolled(recyclerView, dx, dy);
 
-            scrollUtils.scrollHandleAndIndicator();
-            if(dy != 0) {
+            moved |= dy != 0;
+            if(!scheduled) {
+                scheduled = true;
+                getViewTreeObserver().addOnPreDrawListener(this);
+            }
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            cancel();
+            if(recyclerView == null) {
+                return true;
+            }
+            boolean moved = this.moved;
+            this.moved = false;
+
+            if(scrollUtils.isPlacementDirty()) {
+                scrollUtils.scrollHandleAndIndicator();
+            }
+            if(moved) {
                 onScroll();
             }
 
             //Disables any swipeRefreshLayout parent if the recyclerview is not at the top and enables it if it is.
             if(swipeRefreshLayout != null && !swipeRefreshLayout.isRefreshing()) {
-                if(((LinearLayoutManager)recyclerView.getLayoutManager()).findFirstCompletelyVisibleItemPosition() == 0) {
+                if(!recyclerView.canScrollVertically(-1)) {
                     swipeRefreshLayout.setEnabled(true);
                 } else {
                     swipeRefreshLayout.setEnabled(false);
                 }
             }
+            return true;
+        }
+
+        void cancel() {
+            if(scheduled) {
+                ViewTreeObserver observer = getViewTreeObserver();
+                if(observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                }
+            }
+            scheduled = false;
+            moved = false;
+        }
+    }
+
+    class AdapterObserver extends RecyclerView.AdapterDataObserver {
+        @Override
+        public void onChanged() {
+            scrollUtils.onChanged();
+            restoreGeometry();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            scrollUtils.onItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            scrollUtils.onItemRangeInserted(positionStart, itemCount);
+            restoreGeometry();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            scrollUtils.onItemRangeRemoved(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            scrollUtils.onItemRangeMoved(fromPosition, toPosition, itemCount);
         }
     }
 
+    static class SavedState extends BaseSavedState {
+        int geometryMode;
+        long geometryVersion;
+        int itemCount;
+        // Learned heights as runs of equal height, null if they weren't saved.
+        int[] runLengths;
+        int[] runHeights;
+        // Per view type statistics for GeometryMode.ESTIMATED, null if they weren't saved.
+        int[] viewTypes;
+        int[] typeCounts;
+        int[] typeMeasured;
+        long[] typeMeasuredHeights;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            geometryMode = in.readInt();
+            geometryVersion = in.readLong();
+            itemCount = in.readInt();
+            runLengths = in.createIntArray();
+            runHeights = in.createIntArray();
+            viewTypes = in.createIntArray();
+            typeCounts = in.createIntArray();
+            typeMeasured = in.createIntArray();
+            typeMeasuredHeights = in.createLongArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(geometryMode);
+            out.writeLong(geometryVersion);
+            out.writeInt(itemCount);
+            out.writeIntArray(runLengths);
+            out.writeIntArray(runHeights);
+            out.writeIntArray(viewTypes);
+            out.writeIntArray(typeCounts);
+            out.writeIntArray(typeMeasured);
+            out.writeLongArray(typeMeasuredHeights);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     enum ScrollMode {
         FIRST_VISIBLE,
         LAST_ELEMENT
     }
+
+    public enum GeometryMode {
+        /**
+         * Every row is assumed to be as tall as the first visible one. Cheapest, but only accurate
+         * if all of the rows are the same height.
+         */
+        UNIFORM,
+        /**
+         * The height of each row is recorded as it is laid out. Rows which haven't been seen yet
+         * are assumed to be of average height. With a {@link GridLayoutManager} each row is as tall as
+         * its tallest item, and with a {@link StaggeredGridLayoutManager} the height stacked in each
+         * span is tracked as well.
+         */
+        MEASURED,
+        /**
+         * Like {@link #MEASURED}, but rows of the same height are stored together. Uses far less
+         * memory for very long lists where most of the rows are the same height.
+         */
+        COMPRESSED,
+        /**
+         * Like {@link #UNIFORM}, but the row height is the average for the whole list, estimated
+         * from the heights measured for each view type and how many items there are of each type.
+         */
+        ESTIMATED,
+        /**
+         * The handle follows the LayoutManager's computeVerticalScrollOffset/Extent/Range and jumps
+         * go through an {@link IPositionForProgress}. Works with any LayoutManager and never
+         * inspects the children.
+         */
+        SCROLL_RANGE
+    }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/*
+ * The scroller used for MaterialScrollBar.GeometryMode.MEASURED and COMPRESSED. Instead of asking
+ * the adapter for depths it learns the height of every row as RecyclerView lays it out, so lists
+ * with rows of different heights work without implementing ICustomScroller. How the heights are
+ * stored is up to the HeightIndex it is given.
+ */
+class MeasuredScroller implements ICustomScroller {
+
+    // Beyond this many runs the heights are too varied to be worth saving in the bar's state.
+    private static final int MAX_SAVED_RUNS = 4096;
+
+    MaterialScrollBar materialScrollBar;
+    HeightIndex index;
+
+    MeasuredScroller(MaterialScrollBar msb, HeightIndex index) {
+        materialScrollBar = msb;
+        this.index = index;
+    }
+
+    /**
+     * Records the heights of the children which are currently laid out.
+     */
+    void measureChildren() {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if(recyclerView.getAdapter() == null || layoutManager == null) {
+            return;
+        }
+        int itemCount = Utils.getItemCount(recyclerView);
+        if(itemCount != index.size()) {
+            reset(itemCount);
+        }
+        for(int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            // A snapshot can be behind what has been laid out, until the adapter catches up.
+            if(position == RecyclerView.NO_POSITION || position >= itemCount) {
+                continue;
+            }
+            measureChild(layoutManager, child, position);
+        }
+    }
+
+    void measureChild(RecyclerView.LayoutManager layoutManager, View child, int position) {
+        index.setHeight(position, Utils.getRowHeight(layoutManager, child));
+    }
+
+    /**
+     * Forgets everything that has been measured.
+     */
+    void reset(int itemCount) {
+        index.reset(itemCount);
+    }
+
+    void onItemRangeInserted(int positionStart, int itemCount) {
+        index.insert(positionStart, itemCount);
+    }
+
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        index.remove(positionStart, itemCount);
+    }
+
+    void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        for(int i = 0; i < itemCount; i++) {
+            if(fromPosition < toPosition) {
+                index.move(fromPosition, toPosition + itemCount - 1);
+            } else {
+                index.move(fromPosition + i, toPosition + i);
+            }
+        }
+    }
+
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        index.invalidate(positionStart, itemCount);
+    }
+
+    void onChanged() {
+        reset(Utils.getItemCount(materialScrollBar.recyclerView));
+    }
+
+    /**
+     * Saves the learned heights into the bar's state, unless there are too many runs of them.
+     */
+    void saveState(MaterialScrollBar.SavedState state) {
+        int[] lengths = new int[MAX_SAVED_RUNS];
+        int[] heights = new int[MAX_SAVED_RUNS];
+        int runs = index.getRuns(lengths, heights);
+        if(runs >= 0) {
+            state.runLengths = Arrays.copyOf(lengths, runs);
+            state.runHeights = Arrays.copyOf(heights, runs);
+        }
+    }
+
+    /**
+     * Puts back heights saved by saveState(), if they cover as many rows as the list now has.
+     */
+    void restoreState(MaterialScrollBar.SavedState state) {
+        if(state.runLengths == null || state.runHeights == null || state.runLengths.length != state.runHeights.length) {
+            return;
+        }
+        long size = 0;
+        for(int length : state.runLengths) {
+            size += length;
+        }
+        if(size == getRowCount()) {
+            index.setRuns(state.runLengths, state.runHeights, state.runLengths.length);
+        }
+    }
+
+    /**
+     * @return How many rows the index should hold.
+     */
+    int getRowCount() {
+        return Utils.getItemCount(materialScrollBar.recyclerView);
+    }
+
+    @Override
+    public int getDepthForItem(int index) {
+        return (int) Math.min(getLargeDepthForItem(index), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getItemIndexForScroll(float progress) {
+        return getLargeItemIndexForScroll(progress);
+    }
+
+    @Override
+    public int getTotalDepth() {
+        return (int) Math.min(getLargeTotalDepth(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        return this.index.getDepth(index);
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        return index.getPositionForDepth(ScrollingUtilities.getDepthForProgress(progress, materialScrollBar.scrollUtils.getAvailableScrollHeight()));
+    }
+
+    @Override
+    public long getLargeTotalDepth() {
+        return index.getTotalDepth();
+    }
+}
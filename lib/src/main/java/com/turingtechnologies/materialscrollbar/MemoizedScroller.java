@@ -0,0 +1,96 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.Arrays;
+
+/*
+ * Sits in front of an adapter's ICustomScroller so that the bar doesn't ask it the same question
+ * on every scroll callback and layout. Recent depths are kept in a small direct mapped table keyed
+ * by position, and the total depth is kept until it could have changed. Both are dropped whenever
+ * the adapter reports a change. Only adapters which promise through isGeometryCacheable() that the
+ * answers can't differ in between are remembered; the rest are passed straight through.
+ */
+class MemoizedScroller implements ICustomScroller {
+
+    // Must be a power of two.
+    private static final int SLOTS = 64;
+
+    private final ICustomScroller scroller;
+    private final boolean cacheable;
+    private final int[] positions = new int[SLOTS];
+    private final long[] depths = new long[SLOTS];
+    private long totalDepth = -1;
+
+    MemoizedScroller(ICustomScroller scroller) {
+        this.scroller = scroller;
+        cacheable = scroller.isGeometryCacheable();
+        invalidate();
+    }
+
+    /**
+     * Forgets every remembered answer, for instance because the adapter's data has changed.
+     */
+    void invalidate() {
+        Arrays.fill(positions, -1);
+        totalDepth = -1;
+    }
+
+    @Override
+    public int getDepthForItem(int index) {
+        return (int) Math.min(getLargeDepthForItem(index), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getItemIndexForScroll(float progress) {
+        return scroller.getItemIndexForScroll(progress);
+    }
+
+    @Override
+    public int getTotalDepth() {
+        return (int) Math.min(getLargeTotalDepth(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        if(!cacheable) {
+            return scroller.getLargeDepthForItem(index);
+        }
+        int slot = index & (SLOTS - 1);
+        if(positions[slot] != index) {
+            depths[slot] = scroller.getLargeDepthForItem(index);
+            positions[slot] = index;
+        }
+        return depths[slot];
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        return scroller.getLargeItemIndexForScroll(progress);
+    }
+
+    @Override
+    public long getLargeTotalDepth() {
+        if(!cacheable) {
+            return scroller.getLargeTotalDepth();
+        }
+        if(totalDepth < 0) {
+            totalDepth = scroller.getLargeTotalDepth();
+        }
+        return totalDepth;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * What a bar has learned about the RecyclerViews it was pointed at before, for bars which are
+ * moved between the pages of a ViewPager. Only the few most recently used are kept.
+ *
+ * The ScrollingUtilities of a page is kept whole, so nothing needs to be measured or rebuilt when
+ * the bar comes back to it. It can't be kept up to date while the bar is elsewhere, as the scrollers
+ * read from whichever RecyclerView the bar is on, so instead any change to the adapter in the
+ * meantime marks the geometry as stale and it is worked out again from scratch.
+ */
+class PageGeometryCache {
+
+    static final int CAPACITY = 4;
+
+    private final LinkedHashMap<RecyclerView, Page> pages = new LinkedHashMap<RecyclerView, Page>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RecyclerView, Page> eldest) {
+            if(size() > CAPACITY) {
+                eldest.getValue().release();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Remembers the state of a RecyclerView which the bar is being moved away from.
+     */
+    void put(RecyclerView recyclerView, Page page) {
+        Page old = pages.put(recyclerView, page);
+        if(old != null) {
+            old.release();
+        }
+        if(page.adapter != null) {
+            page.adapter.registerAdapterDataObserver(page);
+        }
+    }
+
+    /**
+     * @return The state remembered for the RecyclerView, or null if there is none. Either way it is
+     * no longer kept.
+     */
+    Page take(RecyclerView recyclerView) {
+        Page page = pages.remove(recyclerView);
+        if(page != null) {
+            page.release();
+        }
+        return page;
+    }
+
+    void clear() {
+        for(Page page : pages.values()) {
+            page.release();
+        }
+        pages.clear();
+    }
+
+    static class Page extends RecyclerView.AdapterDataObserver {
+        final ScrollingUtilities scrollUtils;
+        final PositionFilter positionFilter;
+        final RecyclerView.Adapter adapter;
+        final MaterialScrollBar.GeometryMode geometryMode;
+        final long geometryVersion;
+        private boolean stale;
+
+        Page(ScrollingUtilities scrollUtils, PositionFilter positionFilter, RecyclerView.Adapter adapter,
+             MaterialScrollBar.GeometryMode geometryMode, long geometryVersion) {
+            this.scrollUtils = scrollUtils;
+            this.positionFilter = positionFilter;
+            this.adapter = adapter;
+            this.geometryMode = geometryMode;
+            this.geometryVersion = geometryVersion;
+        }
+
+        /**
+         * @return Whether the geometry can be used as it is for the adapter in the given mode.
+         */
+        boolean isValidFor(RecyclerView.Adapter adapter, MaterialScrollBar.GeometryMode geometryMode, long geometryVersion) {
+            return !stale && adapter != null && adapter == this.adapter
+                    && geometryMode == this.geometryMode && geometryVersion == this.geometryVersion;
+        }
+
+        private void release() {
+            if(adapter != null) {
+                adapter.unregisterAdapterDataObserver(this);
+            }
+        }
+
+        @Override
+        public void onChanged() {
+            stale = true;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            stale = true;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            stale = true;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            stale = true;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            stale = true;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.Arrays;
+
+/**
+ * Describes which items of an underlying list an adapter is currently showing, for lists which are
+ * filtered in place. Pass one to {@link MaterialScrollBar#setPositionFilter(PositionFilter)} and the
+ * indicator will be asked about the position of each item in the underlying list rather than its
+ * position in the adapter, so whatever describes the items needn't know about the filter.
+ *
+ * Stored as one bit per item, with a count of the visible items before every 512 of them. That
+ * makes {@link #rank(int)} O(1) and {@link #select(int)} O(log n), and changing the filter only
+ * touches the bits. The counts are brought up to date on the next lookup.
+ */
+public class PositionFilter {
+
+    // 2^BLOCK_SHIFT bits per block, which is BLOCK_WORDS longs.
+    private static final int BLOCK_SHIFT = 9;
+    private static final int BLOCK_WORDS = 1 << (BLOCK_SHIFT - 6);
+
+    private final int size;
+    final long[] words;
+    // Bumped on every change, so that anything keeping state per item can tell when to catch up.
+    int version;
+    // The number of visible items before each block, followed by the total.
+    private final int[] blockRanks;
+    private boolean dirty = true;
+
+    /**
+     * @param size The number of items in the underlying list.
+     * @param visible Whether the items start out visible.
+     */
+    public PositionFilter(int size, boolean visible) {
+        this.size = size;
+        words = new long[(size + 63) >>> 6];
+        blockRanks = new int[((size + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT) + 1];
+        if(visible) {
+            Arrays.fill(words, -1L);
+            if((size & 63) != 0) {
+                words[words.length - 1] = (1L << (size & 63)) - 1;
+            }
+        }
+    }
+
+    /**
+     * @return The number of items in the underlying list.
+     */
+    public int size() {
+        return size;
+    }
+
+    public PositionFilter setVisible(int position, boolean visible) {
+        if(visible) {
+            words[position >>> 6] |= 1L << position;
+        } else {
+            words[position >>> 6] &= ~(1L << position);
+        }
+        dirty = true;
+        version++;
+        return this;
+    }
+
+    public boolean isVisible(int position) {
+        return (words[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * @return The number of visible items, which should be the adapter's item count.
+     */
+    public int getVisibleCount() {
+        updateRanks();
+        return blockRanks[blockRanks.length - 1];
+    }
+
+    /**
+     * @param position A position in the underlying list.
+     * @return The number of visible items before it, which is its position in the adapter if it is
+     * visible itself.
+     */
+    public int rank(int position) {
+        updateRanks();
+        if(position >= size) {
+            return blockRanks[blockRanks.length - 1];
+        }
+        int word = position >>> 6;
+        int rank = blockRanks[position >>> BLOCK_SHIFT];
+        for(int i = word & ~(BLOCK_WORDS - 1); i < word; i++) {
+            rank += Long.bitCount(words[i]);
+        }
+        return rank + Long.bitCount(words[word] & ((1L << position) - 1));
+    }
+
+    /**
+     * @param rank A position in the adapter.
+     * @return The position in the underlying list of the visible item with that rank, or -1 if
+     * there aren't that many visible items.
+     */
+    public int select(int rank) {
+        updateRanks();
+        if(rank < 0 || rank >= blockRanks[blockRanks.length - 1]) {
+            return -1;
+        }
+        // The last block with fewer visible items before it than the rank.
+        int low = 0;
+        int high = blockRanks.length - 2;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(blockRanks[mid] <= rank) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int remaining = rank - blockRanks[low];
+        int word = low * BLOCK_WORDS;
+        while(Long.bitCount(words[word]) <= remaining) {
+            remaining -= Long.bitCount(words[word++]);
+        }
+        long bits = words[word];
+        for(int i = 0; i < remaining; i++) {
+            bits &= bits - 1;
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private void updateRanks() {
+        if(!dirty) {
+            return;
+        }
+        int rank = 0;
+        for(int block = 0; block < blockRanks.length - 1; block++) {
+            blockRanks[block] = rank;
+            int end = Math.min((block + 1) * BLOCK_WORDS, words.length);
+            for(int i = block * BLOCK_WORDS; i < end; i++) {
+                rank += Long.bitCount(words[i]);
+            }
+        }
+        blockRanks[blockRanks.length - 1] = rank;
+        dirty = false;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+/*
+ * A HeightIndex which stores its rows back to front in another one, anchoring the list at its
+ * bottom. Used for lists which are stacked from the end, such as chats, where older items are
+ * inserted at position 0 a page at a time. Those inserts land at the end of the underlying index,
+ * where they are cheap, rather than shifting every row which has already been measured.
+ */
+class ReversedHeightIndex implements HeightIndex {
+
+    private final HeightIndex index;
+
+    ReversedHeightIndex(HeightIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void reset(int size) {
+        index.reset(size);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public int getEstimate() {
+        return index.getEstimate();
+    }
+
+    @Override
+    public void setHeight(int position, int height) {
+        index.setHeight(size() - 1 - position, height);
+    }
+
+    @Override
+    public int getHeight(int position) {
+        return index.getHeight(size() - 1 - position);
+    }
+
+    @Override
+    public long getDepth(int position) {
+        position = Math.max(0, Math.min(position, size()));
+        return index.getTotalDepth() - index.getDepth(size() - position);
+    }
+
+    @Override
+    public long getTotalDepth() {
+        return index.getTotalDepth();
+    }
+
+    @Override
+    public int getPositionForDepth(long depth) {
+        if(size() == 0) {
+            return 0;
+        }
+        // Counted from the bottom, a depth on a boundary between two rows belongs to the upper one.
+        long fromBottom = Math.max(index.getTotalDepth() - depth - 1, 0);
+        return Math.max(0, size() - 1 - index.getPositionForDepth(fromBottom));
+    }
+
+    @Override
+    public void insert(int position, int count) {
+        index.insert(size() - Math.min(position, size()), count);
+    }
+
+    @Override
+    public void remove(int position, int count) {
+        count = Math.min(count, size() - position);
+        index.remove(size() - position - count, count);
+    }
+
+    @Override
+    public void move(int from, int to) {
+        index.move(size() - 1 - from, size() - 1 - to);
+    }
+
+    @Override
+    public void invalidate(int position, int count) {
+        count = Math.min(count, size() - position);
+        index.invalidate(size() - position - count, count);
+    }
+
+    @Override
+    public int getRuns(int[] lengths, int[] heights) {
+        int runs = index.getRuns(lengths, heights);
+        for(int i = 0, j = runs - 1; i < j; i++, j--) {
+            int length = lengths[i];
+            lengths[i] = lengths[j];
+            lengths[j] = length;
+            int height = heights[i];
+            heights[i] = heights[j];
+            heights[j] = height;
+        }
+        return runs;
+    }
+
+    @Override
+    public void setRuns(int[] lengths, int[] heights, int runs) {
+        int[] reversedLengths = new int[runs];
+        int[] reversedHeights = new int[runs];
+        for(int i = 0; i < runs; i++) {
+            reversedLengths[i] = lengths[runs - 1 - i];
+            reversedHeights[i] = heights[runs - 1 - i];
+        }
+        index.setRuns(reversedLengths, reversedHeights, runs);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.Arrays;
+
+/*
+ * Row heights stored as runs of consecutive rows which share a height. For lists where nearly
+ * every row is the same height this needs memory in proportion to the number of runs rather than
+ * the number of rows. Lookups binary search the run boundaries, so they are O(log runs).
+ *
+ * Recording a new height splits at most one run into three and merges equal neighbours back
+ * together, which costs O(runs) to shift the arrays and refresh the prefix sums. Inserting,
+ * removing, moving and invalidating rows are O(runs) as well, however many rows they touch.
+ */
+class RunLengthHeightIndex implements HeightIndex {
+
+    // First position of each run.
+    private int[] runStart = new int[8];
+    // Height of the rows in each run, 0 if they haven't been measured.
+    private int[] runHeight = new int[8];
+    // Sum of the measured heights, and number of unmeasured rows, before each run.
+    private long[] measuredBefore = new long[8];
+    private int[] unmeasuredBefore = new int[8];
+    private int runs;
+    private int size;
+    // Scratch space for setHeight().
+    private final int[] starts = new int[5];
+    private final int[] heights = new int[5];
+
+    private long measuredHeight;
+    private int measuredCount;
+
+    RunLengthHeightIndex(int size) {
+        reset(size);
+    }
+
+    @Override
+    public void reset(int size) {
+        this.size = size;
+        runs = size == 0 ? 0 : 1;
+        runStart[0] = 0;
+        runHeight[0] = 0;
+        measuredBefore[0] = 0;
+        unmeasuredBefore[0] = 0;
+        measuredHeight = 0;
+        measuredCount = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getEstimate() {
+        return measuredCount == 0 ? 0 : (int) (measuredHeight / measuredCount);
+    }
+
+    @Override
+    public void setHeight(int position, int height) {
+        if(position < 0 || position >= size || height <= 0) {
+            return;
+        }
+        int run = findRun(position);
+        if(runHeight[run] == height) {
+            return;
+        }
+        int previous = runHeight[run];
+        measuredHeight += height - previous;
+        measuredCount += previous == 0 ? 1 : 0;
+
+        // Lays out the neighbourhood of the row as at most five runs, merges equal neighbours
+        // and writes the result back in place of the runs it came from.
+        int first = Math.max(run - 1, 0);
+        int last = Math.min(run + 1, runs - 1);
+        int count = 0;
+        if(first < run) {
+            starts[count] = runStart[first];
+            heights[count++] = runHeight[first];
+        }
+        if(runStart[run] < position) {
+            starts[count] = runStart[run];
+            heights[count++] = previous;
+        }
+        starts[count] = position;
+        heights[count++] = height;
+        if(position + 1 < getRunEnd(run)) {
+            starts[count] = position + 1;
+            heights[count++] = previous;
+        }
+        if(last > run) {
+            starts[count] = runStart[last];
+            heights[count++] = runHeight[last];
+        }
+        int merged = 1;
+        for(int i = 1; i < count; i++) {
+            if(heights[i] != heights[merged - 1]) {
+                starts[merged] = starts[i];
+                heights[merged++] = heights[i];
+            }
+        }
+
+        int replaced = last - first + 1;
+        ensureCapacity(runs - replaced + merged);
+        int tail = runs - last - 1;
+        System.arraycopy(runStart, last + 1, runStart, first + merged, tail);
+        System.arraycopy(runHeight, last + 1, runHeight, first + merged, tail);
+        System.arraycopy(starts, 0, runStart, first, merged);
+        System.arraycopy(heights, 0, runHeight, first, merged);
+        runs += merged - replaced;
+        updatePrefixSums(first);
+    }
+
+    @Override
+    public int getHeight(int position) {
+        int height = runHeight[findRun(position)];
+        return height == 0 ? getEstimate() : height;
+    }
+
+    @Override
+    public long getDepth(int position) {
+        if(size == 0) {
+            return 0;
+        }
+        if(position >= size) {
+            return getTotalDepth();
+        }
+        int run = findRun(position);
+        int height = runHeight[run] == 0 ? getEstimate() : runHeight[run];
+        return getRunDepth(run) + (long) (position - runStart[run]) * height;
+    }
+
+    @Override
+    public long getTotalDepth() {
+        return measuredHeight + (long) (size - measuredCount) * getEstimate();
+    }
+
+    @Override
+    public int getPositionForDepth(long depth) {
+        if(size == 0) {
+            return 0;
+        }
+        int low = 0;
+        int high = runs - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(getRunDepth(mid) <= depth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int height = runHeight[low] == 0 ? getEstimate() : runHeight[low];
+        long offset = depth - getRunDepth(low);
+        long position = runStart[low];
+        if(height > 0 && offset > 0) {
+            position += Math.min(offset / height, getRunEnd(low) - runStart[low] - 1);
+        }
+        return (int) Math.min(position, size - 1);
+    }
+
+    @Override
+    public void insert(int position, int count) {
+        position = Math.min(position, size);
+        int run = splitAt(position);
+        ensureCapacity(runs + 1);
+        System.arraycopy(runStart, run, runStart, run + 1, runs - run);
+        System.arraycopy(runHeight, run, runHeight, run + 1, runs - run);
+        runs++;
+        runStart[run] = position;
+        runHeight[run] = 0;
+        for(int i = run + 1; i < runs; i++) {
+            runStart[i] += count;
+        }
+        size += count;
+        compact();
+    }
+
+    @Override
+    public void remove(int position, int count) {
+        count = Math.min(count, size - position);
+        int first = splitAt(position);
+        int last = splitAt(position + count);
+        for(int run = first; run < last; run++) {
+            if(runHeight[run] != 0) {
+                int length = getRunEnd(run) - runStart[run];
+                measuredHeight -= (long) length * runHeight[run];
+                measuredCount -= length;
+            }
+        }
+        System.arraycopy(runStart, last, runStart, first, runs - last);
+        System.arraycopy(runHeight, last, runHeight, first, runs - last);
+        runs -= last - first;
+        for(int i = first; i < runs; i++) {
+            runStart[i] -= count;
+        }
+        size -= count;
+        compact();
+    }
+
+    @Override
+    public void move(int from, int to) {
+        if(from == to || from < 0 || to < 0 || from >= size || to >= size) {
+            return;
+        }
+        int height = runHeight[findRun(from)];
+        remove(from, 1);
+        insert(to, 1);
+        setHeight(to, height);
+    }
+
+    @Override
+    public void invalidate(int position, int count) {
+        count = Math.min(count, size - position);
+        int first = splitAt(position);
+        int last = splitAt(position + count);
+        for(int run = first; run < last; run++) {
+            if(runHeight[run] != 0) {
+                int length = getRunEnd(run) - runStart[run];
+                measuredHeight -= (long) length * runHeight[run];
+                measuredCount -= length;
+                runHeight[run] = 0;
+            }
+        }
+        compact();
+    }
+
+    @Override
+    public int getRuns(int[] lengths, int[] heights) {
+        if(runs > lengths.length) {
+            return -1;
+        }
+        for(int run = 0; run < runs; run++) {
+            lengths[run] = getRunEnd(run) - runStart[run];
+            heights[run] = runHeight[run];
+        }
+        return runs;
+    }
+
+    @Override
+    public void setRuns(int[] lengths, int[] heights, int runs) {
+        int size = 0;
+        for(int run = 0; run < runs; run++) {
+            size += lengths[run];
+        }
+        reset(size);
+        ensureCapacity(runs);
+        int position = 0;
+        for(int run = 0; run < runs; run++) {
+            runStart[run] = position;
+            runHeight[run] = heights[run];
+            position += lengths[run];
+            if(heights[run] != 0) {
+                measuredHeight += (long) lengths[run] * heights[run];
+                measuredCount += lengths[run];
+            }
+        }
+        this.runs = runs;
+        compact();
+    }
+
+    // Makes sure a run starts at the position and returns its index, or runs for the end of the list.
+    private int splitAt(int position) {
+        if(position >= size) {
+            return runs;
+        }
+        int run = findRun(position);
+        if(runStart[run] == position) {
+            return run;
+        }
+        ensureCapacity(runs + 1);
+        System.arraycopy(runStart, run + 1, runStart, run + 2, runs - run - 1);
+        System.arraycopy(runHeight, run + 1, runHeight, run + 2, runs - run - 1);
+        runs++;
+        runStart[run + 1] = position;
+        runHeight[run + 1] = runHeight[run];
+        return run + 1;
+    }
+
+    // Drops empty runs, merges neighbours of equal height and refreshes the prefix sums.
+    private void compact() {
+        int kept = 0;
+        for(int run = 0; run < runs; run++) {
+            if(getRunEnd(run) == runStart[run]) {
+                continue;
+            }
+            if(kept > 0 && runHeight[kept - 1] == runHeight[run]) {
+                continue;
+            }
+            runStart[kept] = runStart[run];
+            runHeight[kept++] = runHeight[run];
+        }
+        runs = kept;
+        if(runs == 0 && size > 0) {
+            runs = 1;
+            runStart[0] = 0;
+            runHeight[0] = 0;
+        }
+        updatePrefixSums(0);
+    }
+
+    private long getRunDepth(int run) {
+        return measuredBefore[run] + (long) unmeasuredBefore[run] * getEstimate();
+    }
+
+    private int getRunEnd(int run) {
+        return run + 1 < runs ? runStart[run + 1] : size;
+    }
+
+    // The last run which starts at or before the position.
+    private int findRun(int position) {
+        int run = Arrays.binarySearch(runStart, 0, runs, position);
+        return run >= 0 ? run : -run - 2;
+    }
+
+    private void updatePrefixSums(int from) {
+        for(int run = Math.max(from, 1); run < runs; run++) {
+            int length = runStart[run] - runStart[run - 1];
+            if(runHeight[run - 1] == 0) {
+                measuredBefore[run] = measuredBefore[run - 1];
+                unmeasuredBefore[run] = unmeasuredBefore[run - 1] + length;
+            } else {
+                measuredBefore[run] = measuredBefore[run - 1] + (long) length * runHeight[run - 1];
+                unmeasuredBefore[run] = unmeasuredBefore[run - 1];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > runStart.length) {
+            int length = Math.max(capacity, runStart.length * 2);
+            runStart = Arrays.copyOf(runStart, length);
+            runHeight = Arrays.copyOf(runHeight, length);
+            measuredBefore = Arrays.copyOf(measuredBefore, length);
+            unmeasuredBefore = Arrays.copyOf(unmeasuredBefore, length);
+        }
+    }
+}
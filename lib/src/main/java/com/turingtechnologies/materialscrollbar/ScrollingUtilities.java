@@ -16,8 +16,11 @@
 
 package com.turingtechnologies.materialscrollbar;
 
+import androidx.recyclerview.widget.ConcatAdapter;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -34,63 +37,198 @@ class ScrollingUtilities {
     }
 
     ICustomScroller customScroller;
+    HeightEstimator estimator;
+    // Set for GeometryMode.SCROLL_RANGE, which takes its geometry from the LayoutManager.
+    IPositionForProgress positionForProgress;
+    // Which items share a row in a GridLayoutManager.
+    final GridRowIndex gridRows = new GridRowIndex();
+    // Where each child of a ConcatAdapter starts.
+    private final ConcatSegments concatSegments = new ConcatSegments();
 
     private ScrollPositionState scrollPosState = new ScrollPositionState();
 
-    private int constant;
+    private long constant;
 
-    private LinearLayoutManager layoutManager;
+    // What the handle was last placed from: the first child's position, offset and height, the
+    // number of items, and the heights and padding of the list and the bar. Layout passes which
+    // change none of them are skipped.
+    private int placedPosition;
+    private int placedOffset;
+    private int placedChildHeight;
+    private int placedItemCount = -1;
+    private int placedListHeight;
+    private int placedPaddingTop;
+    private int placedPaddingBottom;
+    private int placedBarHeight;
 
     private class ScrollPositionState {
         // The index of the first visible row
         private int rowIndex;
         // The offset of the first visible row
         private int rowTopOffset;
-        // The height of a given row (they are currently all the same height)
+        // The height of a given row (they are all assumed to be the same height)
         private int rowHeight;
         private int indicatorPosition;
     }
 
     void scrollHandleAndIndicator() {
+        rememberPlacement();
+        if(positionForProgress != null) {
+            scrollHandleAndIndicatorFromRange();
+            return;
+        }
         int scrollBarY;
         getCurScrollState();
         if(customScroller != null) {
-            constant = customScroller.getDepthForItem(materialScrollBar.recyclerView.getChildAdapterPosition(materialScrollBar.recyclerView.getChildAt(0)));
+            constant = customScroller.getLargeDepthForItem(materialScrollBar.recyclerView.getChildAdapterPosition(materialScrollBar.recyclerView.getChildAt(0)));
+        } else {
+            constant = (long) scrollPosState.rowHeight * scrollPosState.rowIndex;
+        }
+        if(isReverseLayout()) {
+            constant += materialScrollBar.recyclerView.getPaddingBottom();
         } else {
-            constant = scrollPosState.rowHeight * scrollPosState.rowIndex;
+            constant += materialScrollBar.recyclerView.getPaddingTop();
         }
-        constant += + materialScrollBar.recyclerView.getPaddingTop();
         scrollBarY = (int) getScrollPosition();
-        materialScrollBar.handleThumb.setY(scrollBarY);
-        materialScrollBar.handleThumb.invalidate();
+        moveHandle(scrollBarY);
+        int element;
+        GridRowIndex rows = getGridRows();
+        if(rows != null && materialScrollBar.scrollMode == MaterialScrollBar.ScrollMode.FIRST_VISIBLE) {
+            element = rows.getFirstPositionInRow(scrollPosState.rowIndex);
+        } else {
+            element = scrollPosState.indicatorPosition;
+        }
+        materialScrollBar.checkLoadAhead(element);
         if(materialScrollBar.indicator != null) {
-            int element;
-            if(materialScrollBar.recyclerView.getLayoutManager() instanceof GridLayoutManager) {
-                element = scrollPosState.rowIndex * ((GridLayoutManager)materialScrollBar.recyclerView.getLayoutManager()).getSpanCount();
-            } else {
-                element = scrollPosState.indicatorPosition;
-            }
             materialScrollBar.indicator.setText(element);
 
             materialScrollBar.indicator.setScroll(scrollBarY + materialScrollBar.getTop());
         }
     }
 
-    private float getScrollPosition() {
-        getCurScrollState();
-        int scrollY = materialScrollBar.getPaddingTop() + constant - scrollPosState.rowTopOffset;
-        int scrollHeight = getAvailableScrollHeight();
+    /*
+     * Equivalent of scrollHandleAndIndicator() for GeometryMode.SCROLL_RANGE. Only the
+     * computeVerticalScroll* methods are used, so any LayoutManager works and no children are
+     * inspected.
+     */
+    private void scrollHandleAndIndicatorFromRange() {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        long scrollHeight = getAvailableScrollHeight();
+        double progress = scrollHeight <= 0 ? 0 : (double) recyclerView.computeVerticalScrollOffset() / scrollHeight;
+        int scrollBarY = (int) (progress * getAvailableScrollBarHeight());
+        moveHandle(scrollBarY);
+        if(recyclerView.getAdapter() == null) {
+            return;
+        }
+        if(materialScrollBar.scrollMode == MaterialScrollBar.ScrollMode.LAST_ELEMENT) {
+            progress = materialScrollBar.currentScrollPercent;
+        }
+        if(isReverseLayout()) {
+            progress = 1 - progress;
+        }
+        int element = positionForProgress.getPositionForProgress(progress, Utils.getItemCount(recyclerView.getAdapter()));
+        materialScrollBar.checkLoadAhead(element);
+        if(materialScrollBar.indicator != null) {
+            materialScrollBar.indicator.setText(element);
+
+            materialScrollBar.indicator.setScroll(scrollBarY + materialScrollBar.getTop());
+        }
+    }
+
+    // Expects getCurScrollState() to have been called already.
+    private double getScrollPosition() {
+        long scrollY;
+        if(isReverseLayout()) {
+            // constant and rowTopOffset are measured up from the bottom, where position 0 is.
+            scrollY = materialScrollBar.getPaddingTop() + getAvailableScrollHeight() - (constant - scrollPosState.rowTopOffset);
+        } else {
+            scrollY = materialScrollBar.getPaddingTop() + constant - scrollPosState.rowTopOffset;
+        }
+        long scrollHeight = getAvailableScrollHeight();
         int barHeight = getAvailableScrollBarHeight();
-        return ((float) scrollY / scrollHeight) * barHeight;
+        return ((double) scrollY / scrollHeight) * barHeight;
+    }
+
+    private void moveHandle(int y) {
+        if(materialScrollBar.handleThumb.getY() != y) {
+            materialScrollBar.handleThumb.setY(y);
+            materialScrollBar.handleThumb.invalidate();
+        }
+    }
+
+    /**
+     * @return Whether anything the handle is placed from has changed since it was last placed.
+     */
+    boolean isPlacementDirty() {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        View child = recyclerView.getChildAt(0);
+        return placedItemCount == -1
+                || placedPosition != recyclerView.getChildAdapterPosition(child)
+                || placedOffset != getOffset(child)
+                || placedChildHeight != getChildHeight(child)
+                || placedItemCount != getItemCount()
+                || placedListHeight != recyclerView.getHeight()
+                || placedPaddingTop != recyclerView.getPaddingTop()
+                || placedPaddingBottom != recyclerView.getPaddingBottom()
+                || placedBarHeight != materialScrollBar.getHeight();
+    }
+
+    private void rememberPlacement() {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        View child = recyclerView.getChildAt(0);
+        placedPosition = recyclerView.getChildAdapterPosition(child);
+        placedOffset = getOffset(child);
+        placedChildHeight = getChildHeight(child);
+        placedItemCount = getItemCount();
+        placedListHeight = recyclerView.getHeight();
+        placedPaddingTop = recyclerView.getPaddingTop();
+        placedPaddingBottom = recyclerView.getPaddingBottom();
+        placedBarHeight = materialScrollBar.getHeight();
+    }
+
+    private int getOffset(View child) {
+        return child == null ? 0 : materialScrollBar.recyclerView.getLayoutManager().getDecoratedTop(child);
+    }
+
+    // In UNIFORM and ESTIMATED the whole scroll range comes from a row's height, so one that grows
+    // in place has to move the handle.
+    private int getChildHeight(View child) {
+        return child == null ? 0 : Utils.getRowHeight(materialScrollBar.recyclerView.getLayoutManager(), child);
+    }
+
+    private int getItemCount() {
+        return Utils.getItemCount(materialScrollBar.recyclerView);
     }
 
     private int getRowCount() {
-        int rowCount = materialScrollBar.recyclerView.getLayoutManager().getItemCount();
-        if(materialScrollBar.recyclerView.getLayoutManager() instanceof GridLayoutManager) {
-            int spanCount = ((GridLayoutManager) materialScrollBar.recyclerView.getLayoutManager()).getSpanCount();
-            rowCount = (int) Math.ceil((double) rowCount / spanCount);
+        GridRowIndex rows = getGridRows();
+        return rows != null ? rows.getRowCount() : materialScrollBar.recyclerView.getLayoutManager().getItemCount();
+    }
+
+    /**
+     * @return The rows of the GridLayoutManager, brought up to date with its SpanSizeLookup, or
+     * null if the LayoutManager isn't a GridLayoutManager.
+     */
+    GridRowIndex getGridRows() {
+        RecyclerView.LayoutManager layoutManager = materialScrollBar.recyclerView.getLayoutManager();
+        if(!(layoutManager instanceof GridLayoutManager)) {
+            return null;
+        }
+        gridRows.sync((GridLayoutManager) layoutManager, layoutManager.getItemCount());
+        return gridRows;
+    }
+
+    /**
+     * @return The children of the ConcatAdapter, brought up to date, or null if the adapter isn't
+     * a ConcatAdapter.
+     */
+    ConcatSegments getConcatSegments() {
+        RecyclerView.Adapter adapter = materialScrollBar.recyclerView.getAdapter();
+        if(!(adapter instanceof ConcatAdapter)) {
+            return null;
         }
-        return rowCount;
+        concatSegments.sync((ConcatAdapter) adapter);
+        return concatSegments;
     }
 
     /**
@@ -101,6 +239,17 @@ class ScrollingUtilities {
         return materialScrollBar.getHeight() - materialScrollBar.handleThumb.getHeight();
     }
 
+    /**
+     * @param progress A fraction of the scroll height.
+     * @param scrollHeight The available scroll height.
+     * @return The depth which the progress corresponds to. Depths are long and progress is a double
+     * so that every pixel of even a very long list can be addressed. Rounds rather than truncating
+     * so that a progress worked out from a depth maps back to exactly that depth.
+     */
+    static long getDepthForProgress(double progress, long scrollHeight) {
+        return Math.round(progress * scrollHeight);
+    }
+
     /**
      * Scrolls to the specified fraction of the RV
      *
@@ -108,52 +257,165 @@ class ScrollingUtilities {
      * @return the distance traveled by the RV in the transformation applied by this method.
      * + is downward, - upward.
      */
-    int scrollToPositionAtProgress(float touchFraction) {
+    int scrollToPositionAtProgress(double touchFraction) {
         int priorPosition = materialScrollBar.recyclerView.computeVerticalScrollOffset();
-        int exactItemPos;
-        if(customScroller == null) {
-            int spanCount = 1;
-            if(materialScrollBar.recyclerView.getLayoutManager() instanceof GridLayoutManager) {
-                spanCount = ((GridLayoutManager) materialScrollBar.recyclerView.getLayoutManager()).getSpanCount();
-            }
-
+        long exactItemPos;
+        if(positionForProgress != null) {
+            scrollToPositionAtProgressFromRange(touchFraction);
+            return 0;
+        } else if(customScroller == null) {
             // Stop the scroller if it is scrolling
             materialScrollBar.recyclerView.stopScroll();
 
             getCurScrollState();
 
             //The exact position of our desired item
-            exactItemPos = (int) (getAvailableScrollHeight() * touchFraction);
+            exactItemPos = getDepthForProgress(touchFraction, getAvailableScrollHeight());
+            //In a reverse layout both the depth and the offset below are measured up from the bottom.
+            long startDepth = isReverseLayout() ? getAvailableScrollHeight() - exactItemPos : exactItemPos;
 
             //Scroll to the desired item. The offset used here is kind of hard to explain.
             //If the position we wish to scroll to is, say, position 10.5, we scroll to position 10,
             //and then offset by 0.5 * rowHeight. This is how we achieve smooth scrolling.
             LinearLayoutManager layoutManager = ((LinearLayoutManager) materialScrollBar.recyclerView.getLayoutManager());
             try {
-                layoutManager.scrollToPositionWithOffset(spanCount * exactItemPos / scrollPosState.rowHeight,
-                        -(exactItemPos % scrollPosState.rowHeight));
+                int row = (int) (startDepth / scrollPosState.rowHeight);
+                GridRowIndex rows = getGridRows();
+                layoutManager.scrollToPositionWithOffset(rows != null ? rows.getFirstPositionInRow(row) : row,
+                        (int) -(startDepth % scrollPosState.rowHeight));
             } catch (ArithmeticException e) { /* Avoids issues where children of RV have not yet been laid out */ }
         } else {
-            if(layoutManager == null) {
-                layoutManager = ((LinearLayoutManager) materialScrollBar.recyclerView.getLayoutManager());
+            if(isReverseLayout()) {
+                touchFraction = 1 - touchFraction;
             }
-            exactItemPos = customScroller.getItemIndexForScroll(touchFraction);
-            int offset = (int) (customScroller.getDepthForItem(exactItemPos) - touchFraction * getAvailableScrollHeight());
-            layoutManager.scrollToPositionWithOffset(exactItemPos, offset);
+            int itemPos = customScroller.getLargeItemIndexForScroll(touchFraction);
+            int offset = (int) (customScroller.getLargeDepthForItem(itemPos) - getDepthForProgress(touchFraction, getAvailableScrollHeight()));
+            scrollToPositionWithOffset(itemPos, offset);
             return 0;
         }
-        return exactItemPos - priorPosition;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, exactItemPos - priorPosition));
+    }
+
+    private void scrollToPositionAtProgressFromRange(double touchFraction) {
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        if(recyclerView.getAdapter() == null) {
+            return;
+        }
+        recyclerView.stopScroll();
+        if(isReverseLayout()) {
+            touchFraction = 1 - touchFraction;
+        }
+        scrollToPositionWithOffset(positionForProgress.getPositionForProgress(touchFraction, Utils.getItemCount(recyclerView.getAdapter())), 0);
+    }
+
+    //Uses whichever LayoutManager is attached, falling back to a plain scrollToPosition().
+    private void scrollToPositionWithOffset(int position, int offset) {
+        RecyclerView.LayoutManager layoutManager = materialScrollBar.recyclerView.getLayoutManager();
+        if(layoutManager instanceof LinearLayoutManager) {
+            ((LinearLayoutManager) layoutManager).scrollToPositionWithOffset(position, offset);
+        } else if(layoutManager instanceof StaggeredGridLayoutManager) {
+            ((StaggeredGridLayoutManager) layoutManager).scrollToPositionWithOffset(position, offset);
+        } else if(layoutManager != null) {
+            layoutManager.scrollToPosition(position);
+        }
+    }
+
+    /**
+     * @return Whether position 0 is at the bottom, as in a chat. Depths are still measured from
+     * position 0, so the handle has to be flipped.
+     */
+    boolean isReverseLayout() {
+        RecyclerView.LayoutManager layoutManager = materialScrollBar.recyclerView.getLayoutManager();
+        return layoutManager instanceof LinearLayoutManager && ((LinearLayoutManager) layoutManager).getReverseLayout();
     }
 
-    int getAvailableScrollHeight() {
-        int visibleHeight = materialScrollBar.recyclerView.getHeight();
-        int scrollHeight;
+    long getAvailableScrollHeight() {
+        if(positionForProgress != null) {
+            RecyclerView recyclerView = materialScrollBar.recyclerView;
+            return recyclerView.computeVerticalScrollRange() - recyclerView.computeVerticalScrollExtent();
+        }
+        RecyclerView recyclerView = materialScrollBar.recyclerView;
+        long contentHeight;
         if(customScroller != null) {
-            scrollHeight = materialScrollBar.recyclerView.getPaddingTop() + customScroller.getTotalDepth() + materialScrollBar.recyclerView.getPaddingBottom();
+            contentHeight = customScroller.getLargeTotalDepth();
         } else {
-            scrollHeight = materialScrollBar.recyclerView.getPaddingTop() + getRowCount() * scrollPosState.rowHeight + materialScrollBar.recyclerView.getPaddingBottom();
+            contentHeight = (long) getRowCount() * scrollPosState.rowHeight;
+        }
+        return getAvailableScrollHeight(contentHeight, recyclerView.getPaddingTop(), recyclerView.getPaddingBottom(), recyclerView.getHeight());
+    }
+
+    /**
+     * @return How far the content can scroll: its height plus the padding, less what is visible.
+     */
+    static long getAvailableScrollHeight(long contentHeight, int paddingTop, int paddingBottom, int visibleHeight) {
+        return paddingTop + contentHeight + paddingBottom - visibleHeight;
+    }
+
+    void onItemRangeInserted(int positionStart, int itemCount) {
+        invalidateCaches();
+        gridRows.onItemRangeInserted(positionStart, itemCount);
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).onItemRangeInserted(positionStart, itemCount);
+        }
+        if(estimator != null) {
+            estimator.onItemRangeInserted(materialScrollBar.recyclerView.getAdapter(), positionStart, itemCount);
+        }
+    }
+
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        invalidateCaches();
+        gridRows.onItemRangeRemoved(positionStart, itemCount);
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).onItemRangeRemoved(positionStart, itemCount);
+        }
+        if(estimator != null) {
+            estimator.onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        invalidateCaches();
+        gridRows.onItemRangeMoved(fromPosition, toPosition, itemCount);
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).onItemRangeMoved(fromPosition, toPosition, itemCount);
+        } else if(customScroller instanceof ConcatScroller) {
+            ((ConcatScroller) customScroller).onItemRangeChanged(Math.min(fromPosition, toPosition), Math.abs(fromPosition - toPosition) + itemCount);
+        }
+    }
+
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        invalidateCaches();
+        gridRows.onItemRangeChanged(positionStart, itemCount);
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).onItemRangeChanged(positionStart, itemCount);
+        } else if(customScroller instanceof ConcatScroller) {
+            ((ConcatScroller) customScroller).onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    void onChanged() {
+        invalidateCaches();
+        gridRows.onChanged();
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).onChanged();
+        } else if(customScroller instanceof ConcatScroller) {
+            ((ConcatScroller) customScroller).onChanged();
+        }
+        if(estimator != null) {
+            estimator.onChanged();
+        }
+    }
+
+    void invalidateCaches() {
+        placedItemCount = -1;
+        concatSegments.invalidate();
+        if(customScroller instanceof MemoizedScroller) {
+            ((MemoizedScroller) customScroller).invalidate();
+        } else if(customScroller instanceof BatchedScroller) {
+            ((BatchedScroller) customScroller).invalidate();
+        } else if(customScroller instanceof ConcatScroller) {
+            ((ConcatScroller) customScroller).onStructureChanged();
         }
-        return scrollHeight - visibleHeight;
     }
 
     void getCurScrollState() {
@@ -167,40 +429,65 @@ class ScrollingUtilities {
             return;
         }
 
-        int itemCount = materialScrollBar.recyclerView.getAdapter().getItemCount();
+        int itemCount = Utils.getItemCount(materialScrollBar.recyclerView.getAdapter());
 
         // Return early if there are no items
         if(itemCount == 0) {
             return;
         }
 
+        if(customScroller instanceof MeasuredScroller) {
+            ((MeasuredScroller) customScroller).measureChildren();
+        } else if(customScroller instanceof ConcatScroller) {
+            ((ConcatScroller) customScroller).measureChildren();
+        }
+
         View child = materialScrollBar.recyclerView.getChildAt(0);
 
         scrollPosState.rowIndex = materialScrollBar.recyclerView.getChildAdapterPosition(child);
         scrollPosState.indicatorPosition = getIndicatorPosition();
 
-        if(materialScrollBar.recyclerView.getLayoutManager() instanceof GridLayoutManager) {
-            scrollPosState.rowIndex = scrollPosState.rowIndex / ((GridLayoutManager) materialScrollBar.recyclerView.getLayoutManager()).getSpanCount();
+        GridRowIndex rows = getGridRows();
+        if(rows != null) {
+            scrollPosState.rowIndex = rows.getRowForPosition(scrollPosState.rowIndex);
         }
         if(child == null) {
             scrollPosState.rowTopOffset = 0;
             scrollPosState.rowHeight = 0;
+        } else if(isReverseLayout()) {
+            // Children are still in adapter order, so this is the bottom one, and the offset is
+            // measured up from the bottom of the RecyclerView.
+            scrollPosState.rowTopOffset = materialScrollBar.recyclerView.getHeight() - materialScrollBar.recyclerView.getLayoutManager().getDecoratedBottom(child);
         } else {
             scrollPosState.rowTopOffset = materialScrollBar.recyclerView.getLayoutManager().getDecoratedTop(child);
+        }
+        if(child != null) {
             scrollPosState.rowHeight = child.getHeight();
             if (child.getLayoutParams() instanceof ViewGroup.MarginLayoutParams) {
                 scrollPosState.rowHeight += ((ViewGroup.MarginLayoutParams)child.getLayoutParams()).topMargin;
                 scrollPosState.rowHeight += ((ViewGroup.MarginLayoutParams)child.getLayoutParams()).bottomMargin;
             }
+            if(estimator != null) {
+                estimator.measureChildren(materialScrollBar.recyclerView);
+                int averageHeight = estimator.getAverageHeight();
+                if(averageHeight > 0) {
+                    scrollPosState.rowHeight = averageHeight;
+                }
+            }
         }
     }
 
     private int getIndicatorPosition(){
         if(materialScrollBar.scrollMode == MaterialScrollBar.ScrollMode.FIRST_VISIBLE) {
+            if(isReverseLayout()) {
+                RecyclerView recyclerView = materialScrollBar.recyclerView;
+                return recyclerView.getChildAdapterPosition(recyclerView.getChildAt(recyclerView.getChildCount() - 1));
+            }
             return scrollPosState.rowIndex;
         } else {
-            int itemCount = materialScrollBar.recyclerView.getAdapter().getItemCount();
-            int itemIndex = ((int) (itemCount * materialScrollBar.currentScrollPercent));
+            int itemCount = Utils.getItemCount(materialScrollBar.recyclerView.getAdapter());
+            double percent = isReverseLayout() ? 1 - materialScrollBar.currentScrollPercent : materialScrollBar.currentScrollPercent;
+            int itemIndex = ((int) (itemCount * percent));
             return itemIndex > 0 ? itemIndex - 1 : itemIndex;
         }
     }
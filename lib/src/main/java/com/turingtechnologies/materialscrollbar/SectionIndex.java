@@ -0,0 +1,81 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import java.util.Arrays;
+
+/**
+ * A coarse index of the sections of a list, such as the position at which each letter or month
+ * begins, for describing items which haven't been loaded yet. Usually filled in from whatever the
+ * server says about the whole list. See {@link IWindowedAdapter}.
+ *
+ * Each section runs from its first position up to the next section. Lookups are a binary search.
+ */
+public class SectionIndex {
+
+    private int[] starts = new int[16];
+    private String[] labels = new String[16];
+    private int size;
+
+    /**
+     * Adds a section, replacing any which already begins at the same position.
+     *
+     * @param position The first position of the section.
+     * @param label What the indicator should show for unloaded items in the section.
+     */
+    public void put(int position, String label) {
+        int index = Arrays.binarySearch(starts, 0, size, position);
+        if(index >= 0) {
+            labels[index] = label;
+            return;
+        }
+        index = -index - 1;
+        if(size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            labels = Arrays.copyOf(labels, size * 2);
+        }
+        System.arraycopy(starts, index, starts, index + 1, size - index);
+        System.arraycopy(labels, index, labels, index + 1, size - index);
+        starts[index] = position;
+        labels[index] = label;
+        size++;
+    }
+
+    public void clear() {
+        Arrays.fill(labels, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return The number of sections.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The label of the section containing the position, or null if it comes before the
+     * first section.
+     */
+    public String getLabel(int position) {
+        int index = Arrays.binarySearch(starts, 0, size, position);
+        if(index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? null : labels[index];
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+
+import java.util.Arrays;
+
+/*
+ * MeasuredScroller for a StaggeredGridLayoutManager. As items are laid out it records which span
+ * each one went into and keeps the height stacked up in every span.
+ *
+ * An item in a single span only pushes that span down, so it adds height / spanCount to the
+ * average depth of the spans, while a full span item pushes all of them down. The index holds
+ * every height scaled up by spanCount on that basis, which keeps the average depth monotonic in
+ * the position, so depth lookups and progress to position mapping remain a single O(log n)
+ * search of the index.
+ */
+class StaggeredGridScroller extends MeasuredScroller {
+
+    private static final byte UNMEASURED = -1;
+    private static final byte FULL_SPAN = Byte.MAX_VALUE;
+
+    private int spanCount = 1;
+    // The span each item was laid out in, or UNMEASURED.
+    private byte[] spans = new byte[0];
+    // Sum of the measured heights stacked in each span.
+    private long[] spanHeights = new long[1];
+
+    StaggeredGridScroller(MaterialScrollBar msb, HeightIndex index) {
+        super(msb, index);
+    }
+
+    @Override
+    void measureChildren() {
+        RecyclerView.LayoutManager layoutManager = materialScrollBar.recyclerView.getLayoutManager();
+        if(layoutManager instanceof StaggeredGridLayoutManager && ((StaggeredGridLayoutManager) layoutManager).getSpanCount() != spanCount) {
+            reset(index.size());
+        }
+        super.measureChildren();
+    }
+
+    @Override
+    void measureChild(RecyclerView.LayoutManager layoutManager, View child, int position) {
+        if(!(child.getLayoutParams() instanceof StaggeredGridLayoutManager.LayoutParams)) {
+            return;
+        }
+        StaggeredGridLayoutManager.LayoutParams lp = (StaggeredGridLayoutManager.LayoutParams) child.getLayoutParams();
+        // Children which aren't in a span, such as ones animating out, can't be placed.
+        if(!lp.isFullSpan() && (lp.getSpanIndex() < 0 || lp.getSpanIndex() >= spanHeights.length)) {
+            return;
+        }
+        byte span = lp.isFullSpan() ? FULL_SPAN : (byte) lp.getSpanIndex();
+        int height = Utils.getRowHeight(layoutManager, child);
+        if(height <= 0 || (spans[position] == span && index.getHeight(position) == getWeight(span, height))) {
+            return;
+        }
+        forget(position);
+        spans[position] = span;
+        addToSpans(span, height);
+        index.setHeight(position, getWeight(span, height));
+    }
+
+    @Override
+    void reset(int itemCount) {
+        super.reset(itemCount);
+        RecyclerView.LayoutManager layoutManager = materialScrollBar.recyclerView.getLayoutManager();
+        if(layoutManager instanceof StaggeredGridLayoutManager) {
+            spanCount = ((StaggeredGridLayoutManager) layoutManager).getSpanCount();
+        }
+        spans = new byte[itemCount];
+        Arrays.fill(spans, UNMEASURED);
+        spanHeights = new long[spanCount];
+    }
+
+    @Override
+    void onItemRangeInserted(int positionStart, int itemCount) {
+        if(spans.length != index.size() || positionStart > spans.length) {
+            discard();
+            return;
+        }
+        byte[] newSpans = new byte[spans.length + itemCount];
+        System.arraycopy(spans, 0, newSpans, 0, positionStart);
+        Arrays.fill(newSpans, positionStart, positionStart + itemCount, UNMEASURED);
+        System.arraycopy(spans, positionStart, newSpans, positionStart + itemCount, spans.length - positionStart);
+        spans = newSpans;
+        super.onItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    void onItemRangeRemoved(int positionStart, int itemCount) {
+        if(spans.length != index.size() || positionStart + itemCount > spans.length) {
+            discard();
+            return;
+        }
+        for(int i = positionStart; i < positionStart + itemCount; i++) {
+            forget(i);
+        }
+        byte[] newSpans = new byte[spans.length - itemCount];
+        System.arraycopy(spans, 0, newSpans, 0, positionStart);
+        System.arraycopy(spans, positionStart + itemCount, newSpans, positionStart, newSpans.length - positionStart);
+        spans = newSpans;
+        super.onItemRangeRemoved(positionStart, itemCount);
+    }
+
+    @Override
+    void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        // Every item between the two positions may end up in a different span, so they are all
+        // measured again.
+        onItemRangeChanged(Math.min(fromPosition, toPosition), Math.abs(fromPosition - toPosition) + itemCount);
+    }
+
+    @Override
+    void onItemRangeChanged(int positionStart, int itemCount) {
+        for(int i = positionStart; i < positionStart + itemCount; i++) {
+            forget(i);
+        }
+        super.onItemRangeChanged(positionStart, itemCount);
+    }
+
+    // Which span each item went into isn't saved, and the heights are no use without it.
+    @Override
+    void saveState(MaterialScrollBar.SavedState state) {
+    }
+
+    @Override
+    public long getLargeDepthForItem(int index) {
+        return this.index.getDepth(index) / spanCount;
+    }
+
+    @Override
+    public int getLargeItemIndexForScroll(double progress) {
+        return index.getPositionForDepth(ScrollingUtilities.getDepthForProgress(progress, materialScrollBar.scrollUtils.getAvailableScrollHeight()) * spanCount);
+    }
+
+    /**
+     * The average depth of the spans, plus however far the tallest span sticks out below the
+     * average, so that the bottom of the tallest span can be scrolled to.
+     */
+    @Override
+    public long getLargeTotalDepth() {
+        long tallest = 0;
+        long sum = 0;
+        for(long height : spanHeights) {
+            tallest = Math.max(tallest, height);
+            sum += height;
+        }
+        return index.getTotalDepth() / spanCount + tallest - sum / spanCount;
+    }
+
+    private int getWeight(byte span, int height) {
+        return span == FULL_SPAN ? height * spanCount : height;
+    }
+
+    private void addToSpans(byte span, long height) {
+        if(span == FULL_SPAN) {
+            for(int i = 0; i < spanCount; i++) {
+                spanHeights[i] += height;
+            }
+        } else if(span < spanCount) {
+            spanHeights[span] += height;
+        }
+    }
+
+    /*
+     * Drops everything when a notification doesn't fit what has been measured, which happens when it
+     * arrives before the first layout. The next measure then starts over from the adapter's count.
+     */
+    private void discard() {
+        index.reset(0);
+        spans = new byte[0];
+        Arrays.fill(spanHeights, 0);
+    }
+
+    // Takes an item out of the span heights. The index is left for the caller to update.
+    private void forget(int position) {
+        if(position < 0 || position >= spans.length || spans[position] == UNMEASURED) {
+            return;
+        }
+        byte span = spans[position];
+        int weight = index.getHeight(position);
+        addToSpans(span, -(span == FULL_SPAN ? weight / spanCount : weight));
+        spans[position] = UNMEASURED;
+    }
+}
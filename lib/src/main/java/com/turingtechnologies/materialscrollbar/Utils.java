@@ -24,6 +24,8 @@ import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.recyclerview.widget.RecyclerView;
+
 import java.lang.reflect.ParameterizedType;
 
 class Utils {
@@ -56,6 +58,42 @@ class Utils {
                 c.getResources().getConfiguration().getLayoutDirection() == LayoutDirection.RTL;
     }
 
+    /**
+     * @param layoutManager The LayoutManager which laid out the child.
+     * @param child A child of the recyclerView.
+     * @return The space taken up by the child, including its decorations and margins.
+     */
+    static int getRowHeight(RecyclerView.LayoutManager layoutManager, View child) {
+        int height = layoutManager.getDecoratedMeasuredHeight(child);
+        if(child.getLayoutParams() instanceof ViewGroup.MarginLayoutParams) {
+            height += ((ViewGroup.MarginLayoutParams) child.getLayoutParams()).topMargin;
+            height += ((ViewGroup.MarginLayoutParams) child.getLayoutParams()).bottomMargin;
+        }
+        return height;
+    }
+
+    /**
+     * @param adapter The adapter of the recyclerView.
+     * @return The number of items, taken from the adapter's latest snapshot if it has one.
+     */
+    static int getItemCount(RecyclerView.Adapter adapter) {
+        if(adapter instanceof ISnapshotAdapter) {
+            DataSnapshot snapshot = ((ISnapshotAdapter) adapter).getSnapshot();
+            if(snapshot != null) {
+                return snapshot.getItemCount();
+            }
+        }
+        return adapter.getItemCount();
+    }
+
+    /**
+     * @return The number of items in the recyclerView's adapter as for getItemCount(adapter), or 0
+     * if it has none.
+     */
+    static int getItemCount(RecyclerView recyclerView) {
+        return recyclerView.getAdapter() == null ? 0 : getItemCount(recyclerView.getAdapter());
+    }
+
     static <T> String getGenericName(T object) {
         return ((Class<T>) ((ParameterizedType) object.getClass().getGenericSuperclass()).getActualTypeArguments()[0]).getSimpleName();
     }
@@ -0,0 +1,114 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.turingtechnologies.materialscrollbar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the FilteredHeightIndex follows its filter and keeps heights by position in the
+ * underlying list.
+ */
+public class FilteredHeightIndexTest {
+
+    private static final int SIZE = 100;
+
+    // The expected heights of the visible rows, given the height of every row underneath.
+    private static void assertMatches(PositionFilter filter, int[] heights, FilteredHeightIndex index) {
+        long sum = 0;
+        int measured = 0;
+        for(int position = 0; position < SIZE; position++) {
+            if(filter.isVisible(position) && heights[position] > 0) {
+                sum += heights[position];
+                measured++;
+            }
+        }
+        int estimate = measured == 0 ? 0 : (int) (sum / measured);
+        assertEquals(filter.getVisibleCount(), index.size());
+        assertEquals(estimate, index.getEstimate());
+        long depth = 0;
+        int row = 0;
+        for(int position = 0; position < SIZE; position++) {
+            if(!filter.isVisible(position)) {
+                continue;
+            }
+            int height = heights[position] > 0 ? heights[position] : estimate;
+            assertEquals(height, index.getHeight(row));
+            assertEquals(depth, index.getDepth(row));
+            if(height > 0) {
+                assertEquals(row, index.getPositionForDepth(depth));
+                assertEquals(row, index.getPositionForDepth(depth + height - 1));
+            }
+            depth += height;
+            row++;
+        }
+        assertEquals(depth, index.getTotalDepth());
+    }
+
+    @Test
+    public void heightsSurviveFilterChanges() {
+        PositionFilter filter = new PositionFilter(SIZE, true);
+        FilteredHeightIndex index = new FilteredHeightIndex(filter);
+        int[] heights = new int[SIZE];
+        for(int position = 0; position < SIZE; position += 2) {
+            heights[position] = 10 + position;
+            index.setHeight(position, heights[position]);
+        }
+        assertMatches(filter, heights, index);
+
+        // Hide every third row, so that rows of the adapter no longer line up with the list.
+        for(int position = 0; position < SIZE; position += 3) {
+            filter.setVisible(position, false);
+        }
+        assertMatches(filter, heights, index);
+
+        // Measured through the filter, so row 1 of the adapter is position 2 underneath.
+        index.setHeight(1, 77);
+        heights[2] = 77;
+        assertMatches(filter, heights, index);
+
+        // Showing the rows again brings back what they measured before.
+        for(int position = 0; position < SIZE; position += 3) {
+            filter.setVisible(position, true);
+        }
+        assertMatches(filter, heights, index);
+    }
+
+    @Test
+    public void invalidateForgetsVisibleRows() {
+        PositionFilter filter = new PositionFilter(SIZE, true);
+        FilteredHeightIndex index = new FilteredHeightIndex(filter);
+        int[] heights = new int[SIZE];
+        for(int position = 0; position < SIZE; position++) {
+            heights[position] = 5 + position % 4;
+            index.setHeight(position, heights[position]);
+        }
+        filter.setVisible(0, false).setVisible(1, false);
+
+        // Rows 0 to 4 of the adapter are positions 2 to 6 underneath.
+        index.invalidate(0, 5);
+        for(int position = 2; position < 7; position++) {
+            heights[position] = 0;
+        }
+        assertMatches(filter, heights, index);
+
+        filter.setVisible(0, true).setVisible(1, true);
+        assertMatches(filter, heights, index);
+    }
+}
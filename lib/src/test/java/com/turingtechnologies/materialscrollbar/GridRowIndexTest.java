@@ -0,0 +1,133 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.turingtechnologies.materialscrollbar;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the GridRowIndex keeps the same rows as one built from scratch while items are
+ * inserted, removed, changed and moved.
+ */
+public class GridRowIndexTest {
+
+    private static final int SPAN_COUNT = 4;
+
+    private final List<Integer> spanSizes = new ArrayList<>();
+    private final GridLayoutManager.SpanSizeLookup lookup = new GridLayoutManager.SpanSizeLookup() {
+        @Override
+        public int getSpanSize(int position) {
+            return spanSizes.get(position);
+        }
+    };
+
+    private GridRowIndex build() {
+        GridRowIndex rows = new GridRowIndex();
+        rows.sync(lookup, SPAN_COUNT, spanSizes.size());
+        return rows;
+    }
+
+    private void assertSameAsFreshBuild(GridRowIndex rows) {
+        GridRowIndex fresh = build();
+        assertEquals(fresh.getRowCount(), rows.getRowCount());
+        for(int row = 0; row < fresh.getRowCount(); row++) {
+            assertEquals(fresh.getFirstPositionInRow(row), rows.getFirstPositionInRow(row));
+        }
+        for(int position = 0; position < spanSizes.size(); position++) {
+            assertEquals(fresh.getRowForPosition(position), rows.getRowForPosition(position));
+        }
+    }
+
+    private void insert(GridRowIndex rows, int position, int... sizes) {
+        for(int i = 0; i < sizes.length; i++) {
+            spanSizes.add(position + i, sizes[i]);
+        }
+        rows.onItemRangeInserted(position, sizes.length);
+    }
+
+    private void remove(GridRowIndex rows, int position, int count) {
+        spanSizes.subList(position, position + count).clear();
+        rows.onItemRangeRemoved(position, count);
+    }
+
+    @Test
+    public void rowsFollowTheLookup() {
+        // A header, three rows of four, an item two spans wide, then a row of leftovers.
+        spanSizes.add(SPAN_COUNT);
+        for(int i = 0; i < 12; i++) {
+            spanSizes.add(1);
+        }
+        spanSizes.add(2);
+        spanSizes.add(1);
+        spanSizes.add(1);
+        spanSizes.add(3);
+        GridRowIndex rows = build();
+        assertEquals(6, rows.getRowCount());
+        assertEquals(0, rows.getRowForPosition(0));
+        assertEquals(1, rows.getRowForPosition(4));
+        assertEquals(2, rows.getRowForPosition(5));
+        assertEquals(4, rows.getRowForPosition(15));
+        assertEquals(16, rows.getFirstPositionInRow(5));
+    }
+
+    @Test
+    public void insertAndRemove() {
+        for(int i = 0; i < 40; i++) {
+            spanSizes.add(i % 9 == 0 ? SPAN_COUNT : 1);
+        }
+        GridRowIndex rows = build();
+
+        insert(rows, 0, 1, 1);
+        assertSameAsFreshBuild(rows);
+        // Enough to push every later row along by one item.
+        insert(rows, 13, 2);
+        assertSameAsFreshBuild(rows);
+        insert(rows, spanSizes.size(), SPAN_COUNT, 1, 3);
+        assertSameAsFreshBuild(rows);
+
+        remove(rows, 0, 3);
+        assertSameAsFreshBuild(rows);
+        remove(rows, 10, 9);
+        assertSameAsFreshBuild(rows);
+        remove(rows, spanSizes.size() - 2, 2);
+        assertSameAsFreshBuild(rows);
+    }
+
+    @Test
+    public void changeAndMove() {
+        for(int i = 0; i < 30; i++) {
+            spanSizes.add(1);
+        }
+        GridRowIndex rows = build();
+
+        spanSizes.set(6, SPAN_COUNT);
+        spanSizes.set(7, 3);
+        rows.onItemRangeChanged(6, 2);
+        assertSameAsFreshBuild(rows);
+
+        spanSizes.add(20, spanSizes.remove(6));
+        rows.onItemRangeMoved(6, 20, 1);
+        assertSameAsFreshBuild(rows);
+    }
+}
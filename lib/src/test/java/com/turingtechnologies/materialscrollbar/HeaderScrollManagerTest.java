@@ -0,0 +1,308 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the HeaderScrollManager still takes in changes after its data has been built in the
+ * background, and that its cache file is read back.
+ */
+public class HeaderScrollManagerTest {
+
+    private static class Adapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> implements FastScrollerUtil.IHeaderAdapter {
+        final List<Boolean> headers = new ArrayList<>();
+        // The height each item would have as a header, if the heights vary.
+        final List<Integer> heights = new ArrayList<>();
+
+        @Override
+        public boolean isHeader(int index) {
+            return headers.get(index);
+        }
+
+        @Override
+        public int getItemCount() {
+            return headers.size();
+        }
+
+        @Override
+        public void initScrollManager(int span) {}
+
+        @Override
+        public int getHeaderHeight() {
+            return 20;
+        }
+
+        @Override
+        public int getRowHeight() {
+            return 10;
+        }
+
+        @Override
+        public int getHeaderHeight(int headerIndex) {
+            return heights.isEmpty() ? getHeaderHeight() : heights.get(headerIndex);
+        }
+
+        @Override
+        public int getRowHeight(int headerIndex) {
+            return heights.isEmpty() ? getRowHeight() : heights.get(headerIndex) / 2;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {}
+    }
+
+    private static FastScrollerUtil.HeaderScrollManager buildAsync(Adapter adapter) {
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+        manager.mMainThread = Runnable::run;
+        manager.calcDataAsync(adapter, Runnable::run, null);
+        return manager;
+    }
+
+    private static void assertSameAsFreshBuild(Adapter adapter, FastScrollerUtil.HeaderScrollManager manager) {
+        FastScrollerUtil.HeaderScrollManager fresh = new FastScrollerUtil.HeaderScrollManager(1);
+        fresh.calcData(adapter);
+        assertEquals(fresh.getSectionCount(), manager.getSectionCount());
+        assertEquals(fresh.getTotalDepth(), manager.getTotalDepth());
+        for(int section = 0; section < fresh.getSectionCount(); section++) {
+            assertEquals(fresh.getHeaderIndex(section), manager.getHeaderIndex(section));
+        }
+        for(int item = 0; item < adapter.getItemCount(); item++) {
+            assertEquals(fresh.getDepthForItem(item), manager.getDepthForItem(item));
+        }
+        for(int i = 0; i <= 10; i++) {
+            assertEquals(fresh.getItemIndexForScroll(i / 10f), manager.getItemIndexForScroll(i / 10f));
+        }
+    }
+
+    // Sections of 1 header and 4 items each.
+    private static Adapter buildSections(int sections) {
+        Adapter adapter = new Adapter();
+        for(int i = 0; i < sections * 5; i++) {
+            adapter.headers.add(i % 5 == 0);
+        }
+        return adapter;
+    }
+
+    private static FastScrollerUtil.HeaderScrollManager build(Adapter adapter) {
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+        manager.calcData(adapter);
+        return manager;
+    }
+
+    private static void remove(Adapter adapter, int positionStart, int itemCount) {
+        adapter.headers.subList(positionStart, positionStart + itemCount).clear();
+        if(!adapter.heights.isEmpty()) {
+            adapter.heights.subList(positionStart, positionStart + itemCount).clear();
+        }
+    }
+
+    @Test
+    public void insertAtStartAfterAsyncBuild() {
+        Adapter adapter = new Adapter();
+        for(int i = 0; i < 10; i++) {
+            adapter.headers.add(i % 5 == 0);
+        }
+        FastScrollerUtil.HeaderScrollManager manager = buildAsync(adapter);
+        assertSameAsFreshBuild(adapter, manager);
+
+        adapter.headers.add(0, true);
+        adapter.headers.add(1, false);
+        manager.onItemRangeInserted(adapter, 0, 2);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void insertAtEndAfterAsyncBuild() {
+        Adapter adapter = new Adapter();
+        for(int i = 0; i < 10; i++) {
+            adapter.headers.add(i % 5 == 0);
+        }
+        FastScrollerUtil.HeaderScrollManager manager = buildAsync(adapter);
+
+        adapter.headers.add(true);
+        adapter.headers.add(false);
+        manager.onItemRangeInserted(adapter, 10, 2);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void insertIntoEmptyManager() {
+        Adapter adapter = new Adapter();
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+
+        adapter.headers.add(true);
+        adapter.headers.add(false);
+        manager.onItemRangeInserted(adapter, 0, 2);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void cacheIsReadBackUntilVersionChanges() throws IOException {
+        File cacheFile = File.createTempFile("headers", null);
+        try {
+            Adapter adapter = new Adapter();
+            for(int i = 0; i < 10; i++) {
+                adapter.headers.add(i % 5 == 0);
+            }
+            FastScrollerUtil.HeaderScrollManager written = new FastScrollerUtil.HeaderScrollManager(1);
+            written.calcData(adapter, cacheFile, 1);
+
+            // With the same version the headers aren't searched for, so the change goes unseen.
+            adapter.headers.set(3, true);
+            FastScrollerUtil.HeaderScrollManager read = new FastScrollerUtil.HeaderScrollManager(1);
+            read.calcData(adapter, cacheFile, 1);
+            assertEquals(written.getSectionCount(), read.getSectionCount());
+            assertEquals(written.getTotalDepth(), read.getTotalDepth());
+
+            FastScrollerUtil.HeaderScrollManager rebuilt = new FastScrollerUtil.HeaderScrollManager(1);
+            rebuilt.calcData(adapter, cacheFile, 2);
+            assertSameAsFreshBuild(adapter, rebuilt);
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void removeFirstHeader() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        // The first item left takes the header's place.
+        remove(adapter, 0, 1);
+        manager.onItemRangeRemoved(0, 1);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void removeFirstHeaderWithVariableHeights() {
+        Adapter adapter = buildSections(3);
+        for(int i = 0; i < adapter.getItemCount(); i++) {
+            adapter.heights.add(20 + 2 * i);
+        }
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        remove(adapter, 0, 1);
+        manager.onItemRangeRemoved(adapter, 0, 1);
+        assertSameAsFreshBuild(adapter, manager);
+
+        remove(adapter, 0, 6);
+        manager.onItemRangeRemoved(adapter, 0, 6);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void removeFirstSection() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        remove(adapter, 0, 5);
+        manager.onItemRangeRemoved(0, 5);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void removeRangeAcrossSections() {
+        Adapter adapter = buildSections(4);
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        // From the middle of the first section to the middle of the third, taking two headers.
+        remove(adapter, 2, 10);
+        manager.onItemRangeRemoved(2, 10);
+        assertSameAsFreshBuild(adapter, manager);
+
+        // The header of what is now the second section and a row either side of it.
+        remove(adapter, 4, 3);
+        manager.onItemRangeRemoved(4, 3);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void removeRangeFromStartAcrossSections() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        remove(adapter, 0, 7);
+        manager.onItemRangeRemoved(0, 7);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void collapseAndExpand() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = build(adapter);
+
+        remove(adapter, 6, 4);
+        manager.onSectionCollapsed(1);
+        assertSameAsFreshBuild(adapter, manager);
+
+        for(int i = 0; i < 7; i++) {
+            adapter.headers.add(6, false);
+        }
+        manager.onSectionExpanded(1, 7);
+        assertSameAsFreshBuild(adapter, manager);
+
+        // The last section, so that nothing follows the change.
+        remove(adapter, adapter.getItemCount() - 4, 4);
+        manager.onSectionCollapsed(2);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void buildFromHeaderPositions() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+        manager.calcData(adapter, new int[] {0, 5, 10}, 3);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void buildFromHeaderPositionsWithoutFirst() {
+        Adapter adapter = buildSections(3);
+        // The first item is a header whether or not it says so.
+        adapter.headers.set(0, false);
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+        manager.calcData(adapter, new int[] {5, 10}, 2);
+        assertEquals(3, manager.getSectionCount());
+        assertEquals(0, manager.getHeaderIndex(0));
+        assertSameAsFreshBuild(adapter, manager);
+    }
+
+    @Test
+    public void buildFromSizes() {
+        Adapter adapter = buildSections(3);
+        FastScrollerUtil.HeaderScrollManager manager = new FastScrollerUtil.HeaderScrollManager(1);
+        manager.calcDataFromSizes(adapter, new int[] {4, 4, 4}, 3);
+        assertSameAsFreshBuild(adapter, manager);
+    }
+}
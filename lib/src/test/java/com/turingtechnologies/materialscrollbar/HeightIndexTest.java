@@ -0,0 +1,226 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.turingtechnologies.materialscrollbar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks every HeightIndex against a plain list of heights, 0 standing for a row which hasn't been
+ * measured.
+ */
+public class HeightIndexTest {
+
+    private static class Model {
+        final List<Integer> heights = new ArrayList<>();
+
+        void reset(int size) {
+            heights.clear();
+            for(int i = 0; i < size; i++) {
+                heights.add(0);
+            }
+        }
+
+        void setHeight(int position, int height) {
+            if(position >= 0 && position < heights.size() && height > 0) {
+                heights.set(position, height);
+            }
+        }
+
+        void insert(int position, int count) {
+            for(int i = 0; i < count; i++) {
+                heights.add(Math.min(position, heights.size()), 0);
+            }
+        }
+
+        void remove(int position, int count) {
+            heights.subList(position, Math.min(position + count, heights.size())).clear();
+        }
+
+        void move(int from, int to) {
+            heights.add(to, heights.remove(from));
+        }
+
+        void invalidate(int position, int count) {
+            for(int i = position; i < Math.min(position + count, heights.size()); i++) {
+                heights.set(i, 0);
+            }
+        }
+
+        int getEstimate() {
+            long sum = 0;
+            int measured = 0;
+            for(int height : heights) {
+                if(height > 0) {
+                    sum += height;
+                    measured++;
+                }
+            }
+            return measured == 0 ? 0 : (int) (sum / measured);
+        }
+    }
+
+    private final Model model = new Model();
+
+    private void assertMatches(HeightIndex index) {
+        assertEquals(model.heights.size(), index.size());
+        int estimate = model.getEstimate();
+        assertEquals(estimate, index.getEstimate());
+        long depth = 0;
+        for(int position = 0; position < model.heights.size(); position++) {
+            int height = model.heights.get(position) == 0 ? estimate : model.heights.get(position);
+            assertEquals(height, index.getHeight(position));
+            assertEquals(depth, index.getDepth(position));
+            if(height > 0) {
+                // Both edges of the row.
+                assertEquals(position, index.getPositionForDepth(depth));
+                assertEquals(position, index.getPositionForDepth(depth + height - 1));
+            }
+            depth += height;
+        }
+        assertEquals(depth, index.getTotalDepth());
+        assertEquals(depth, index.getDepth(model.heights.size()));
+        if(estimate > 0) {
+            assertEquals(model.heights.size() - 1, index.getPositionForDepth(depth + 1000));
+        }
+    }
+
+    // Copies the runs out into a new index, which must hold the same heights.
+    private void assertRunsRoundTrip(HeightIndex index, HeightIndex copy) {
+        int[] lengths = new int[4096];
+        int[] heights = new int[4096];
+        int runs = index.getRuns(lengths, heights);
+        copy.setRuns(lengths, heights, runs);
+        assertMatches(copy);
+    }
+
+    private void exercise(HeightIndex index, HeightIndex copy) {
+        index.reset(20);
+        model.reset(20);
+        assertMatches(index);
+
+        for(int position = 0; position < 20; position += 3) {
+            index.setHeight(position, 10 + position);
+            model.setHeight(position, 10 + position);
+        }
+        // Ignored, being out of range or not a height.
+        index.setHeight(20, 50);
+        index.setHeight(4, 0);
+        assertMatches(index);
+
+        index.insert(0, 3);
+        model.insert(0, 3);
+        index.insert(10, 2);
+        model.insert(10, 2);
+        index.insert(25, 4);
+        model.insert(25, 4);
+        assertMatches(index);
+
+        index.remove(0, 2);
+        model.remove(0, 2);
+        index.remove(5, 6);
+        model.remove(5, 6);
+        // Runs past the end, so only what is there goes.
+        index.remove(18, 10);
+        model.remove(18, 10);
+        assertMatches(index);
+
+        index.move(1, 12);
+        model.move(1, 12);
+        index.move(15, 0);
+        model.move(15, 0);
+        assertMatches(index);
+
+        index.invalidate(3, 4);
+        model.invalidate(3, 4);
+        assertMatches(index);
+        assertRunsRoundTrip(index, copy);
+
+        // Enough rows to need more than one block or run, changed at random.
+        Random random = new Random(42);
+        index.insert(5, 3000);
+        model.insert(5, 3000);
+        for(int step = 0; step < 400; step++) {
+            int size = model.heights.size();
+            int position = random.nextInt(size);
+            switch(random.nextInt(5)) {
+                case 0:
+                    int count = 1 + random.nextInt(700);
+                    index.insert(position, count);
+                    model.insert(position, count);
+                    break;
+                case 1:
+                    count = 1 + random.nextInt(700);
+                    index.remove(position, count);
+                    model.remove(position, count);
+                    break;
+                case 2:
+                    int to = random.nextInt(size);
+                    index.move(position, to);
+                    model.move(position, to);
+                    break;
+                case 3:
+                    count = random.nextInt(50);
+                    index.invalidate(position, count);
+                    model.invalidate(position, count);
+                    break;
+                default:
+                    for(int i = 0; i < 100; i++) {
+                        int height = 1 + random.nextInt(4) * 30;
+                        position = random.nextInt(size);
+                        index.setHeight(position, height);
+                        model.setHeight(position, height);
+                    }
+            }
+            if(model.heights.isEmpty()) {
+                index.insert(0, 1000);
+                model.insert(0, 1000);
+            }
+            if(step % 20 == 0) {
+                assertMatches(index);
+            }
+        }
+        assertMatches(index);
+        assertRunsRoundTrip(index, copy);
+    }
+
+    @Test
+    public void fenwickIndex() {
+        exercise(new FenwickHeightIndex(0), new FenwickHeightIndex(0));
+    }
+
+    @Test
+    public void runLengthIndex() {
+        exercise(new RunLengthHeightIndex(0), new RunLengthHeightIndex(0));
+    }
+
+    @Test
+    public void reversedFenwickIndex() {
+        exercise(new ReversedHeightIndex(new FenwickHeightIndex(0)), new ReversedHeightIndex(new FenwickHeightIndex(0)));
+    }
+
+    @Test
+    public void reversedRunLengthIndex() {
+        exercise(new ReversedHeightIndex(new RunLengthHeightIndex(0)), new ReversedHeightIndex(new RunLengthHeightIndex(0)));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.turingtechnologies.materialscrollbar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the long/double scroll maths can reach the rows of a list which is far taller than
+ * Integer.MAX_VALUE pixels and has more rows than a float can tell apart.
+ */
+public class LargeListGeometryTest {
+
+    private static final int ROWS = 30_000_000;
+    private static final int ROW_HEIGHT = 144;
+    // A RecyclerView with padding, so that the scroll height isn't just the total depth.
+    private static final int PADDING = 48;
+    private static final int VISIBLE_HEIGHT = 1920;
+    // Checking every row takes too long, so every row is only checked at either end of the list and
+    // either side of 2^24, where floats stop telling rows apart. In between, rows are checked at a
+    // stride.
+    private static final int WINDOW = 20_000;
+    private static final int STRIDE = 997;
+    private static final int FLOAT_LIMIT = 1 << 24;
+
+    private static int next(int position, int rows) {
+        int next = position + 1;
+        if(next < WINDOW || next >= rows - WINDOW || Math.abs(next - FLOAT_LIMIT) < WINDOW) {
+            return next;
+        }
+        return position + STRIDE;
+    }
+
+    @Test
+    public void everyPositionIsReachable() {
+        RunLengthHeightIndex index = new RunLengthHeightIndex(ROWS);
+        index.setHeight(0, ROW_HEIGHT);
+        long total = index.getTotalDepth();
+        assertEquals((long) ROWS * ROW_HEIGHT, total);
+        assertTrue(total > Integer.MAX_VALUE);
+
+        for(int position = 0; position < ROWS; position = next(position, ROWS)) {
+            double progress = (double) index.getDepth(position) / total;
+            long depth = ScrollingUtilities.getDepthForProgress(progress, total);
+            assertEquals(position, index.getPositionForDepth(depth));
+        }
+    }
+
+    @Test
+    public void everyPositionIsReachableWithMixedHeights() {
+        RunLengthHeightIndex index = new RunLengthHeightIndex(ROWS);
+        for(int position = 0; position < ROWS; position += 1_000_000) {
+            index.setHeight(position, ROW_HEIGHT * 3);
+            index.setHeight(position + 1, ROW_HEIGHT);
+        }
+        long total = index.getTotalDepth();
+        assertTrue(total > Integer.MAX_VALUE);
+
+        for(int position = 0; position < ROWS; position = next(position, ROWS)) {
+            double progress = (double) index.getDepth(position) / total;
+            long depth = ScrollingUtilities.getDepthForProgress(progress, total);
+            assertEquals(position, index.getPositionForDepth(depth));
+        }
+    }
+
+    @Test
+    public void everyPositionIsReachableInFenwickIndex() {
+        int rows = 2_000_000;
+        FenwickHeightIndex index = new FenwickHeightIndex(rows);
+        // Every third row is left unmeasured, to stand in at the estimate.
+        for(int position = 0; position < rows; position++) {
+            if(position % 3 != 0) {
+                index.setHeight(position, 1200 + position % 7 * 100);
+            }
+        }
+        long total = index.getTotalDepth();
+        assertTrue(total > Integer.MAX_VALUE);
+        long available = ScrollingUtilities.getAvailableScrollHeight(total, PADDING, PADDING, VISIBLE_HEIGHT);
+
+        int last = 0;
+        for(int position = 0; position < rows; position = next(position, rows)) {
+            long depth = index.getDepth(position);
+            if(depth > available) {
+                break;
+            }
+            double progress = (double) depth / available;
+            assertEquals(position, index.getPositionForDepth(ScrollingUtilities.getDepthForProgress(progress, available)));
+            last = position;
+        }
+        // The rest of the list is on screen once the bar is at the bottom.
+        assertEquals(last, index.getPositionForDepth(ScrollingUtilities.getDepthForProgress(1, available)));
+        assertTrue(total - index.getDepth(last + 1) < VISIBLE_HEIGHT);
+    }
+
+    @Test
+    public void everyPositionIsReachableThroughCustomScroller() {
+        final long available = ScrollingUtilities.getAvailableScrollHeight((long) ROWS * ROW_HEIGHT, PADDING, PADDING, VISIBLE_HEIGHT);
+        ICustomScroller adapter = new ICustomScroller() {
+            @Override
+            public int getDepthForItem(int index) {
+                throw new AssertionError("Only the large methods should be used");
+            }
+
+            @Override
+            public int getItemIndexForScroll(float progress) {
+                throw new AssertionError("Only the large methods should be used");
+            }
+
+            @Override
+            public int getTotalDepth() {
+                throw new AssertionError("Only the large methods should be used");
+            }
+
+            @Override
+            public long getLargeDepthForItem(int index) {
+                return (long) index * ROW_HEIGHT;
+            }
+
+            @Override
+            public int getLargeItemIndexForScroll(double progress) {
+                return (int) Math.min(ScrollingUtilities.getDepthForProgress(progress, available) / ROW_HEIGHT, ROWS - 1);
+            }
+
+            @Override
+            public long getLargeTotalDepth() {
+                return (long) ROWS * ROW_HEIGHT;
+            }
+
+            @Override
+            public boolean isGeometryCacheable() {
+                return true;
+            }
+        };
+        // The bar always goes through the memo in front of the adapter.
+        MemoizedScroller scroller = new MemoizedScroller(adapter);
+        assertTrue(scroller.getLargeTotalDepth() > Integer.MAX_VALUE);
+
+        for(int position = 0; position < ROWS; position = next(position, ROWS)) {
+            long depth = scroller.getLargeDepthForItem(position);
+            if(depth > available) {
+                break;
+            }
+            double progress = (double) depth / available;
+            int target = scroller.getLargeItemIndexForScroll(progress);
+            assertEquals(position, target);
+            // The offset which ScrollingUtilities scrolls the target to.
+            assertEquals(0, scroller.getLargeDepthForItem(target) - ScrollingUtilities.getDepthForProgress(progress, available));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.turingtechnologies.materialscrollbar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks rank() and select() against counting the visible items one by one.
+ */
+public class PositionFilterTest {
+
+    // Not a multiple of 64, and long enough for several blocks of counts.
+    private static final int SIZE = 1500;
+
+    private static void assertMatchesCount(PositionFilter filter) {
+        int rank = 0;
+        for(int position = 0; position < filter.size(); position++) {
+            assertEquals(rank, filter.rank(position));
+            if(filter.isVisible(position)) {
+                assertEquals(position, filter.select(rank));
+                rank++;
+            }
+        }
+        assertEquals(rank, filter.getVisibleCount());
+        assertEquals(rank, filter.rank(filter.size()));
+        assertEquals(-1, filter.select(rank));
+        assertEquals(-1, filter.select(-1));
+    }
+
+    @Test
+    public void allVisible() {
+        PositionFilter filter = new PositionFilter(SIZE, true);
+        assertEquals(SIZE, filter.getVisibleCount());
+        assertMatchesCount(filter);
+    }
+
+    @Test
+    public void noneVisible() {
+        PositionFilter filter = new PositionFilter(SIZE, false);
+        assertEquals(0, filter.getVisibleCount());
+        assertMatchesCount(filter);
+    }
+
+    @Test
+    public void changesAreCountedOnNextLookup() {
+        PositionFilter filter = new PositionFilter(SIZE, false);
+        for(int position = 0; position < SIZE; position += 7) {
+            filter.setVisible(position, true);
+        }
+        assertMatchesCount(filter);
+
+        // Either side of a block boundary, and the last item.
+        filter.setVisible(511, true).setVisible(512, true).setVisible(SIZE - 1, true).setVisible(0, false);
+        assertMatchesCount(filter);
+
+        for(int position = 0; position < SIZE; position += 2) {
+            filter.setVisible(position, !filter.isVisible(position));
+        }
+        assertMatchesCount(filter);
+    }
+
+    @Test
+    public void versionChangesWithEveryChange() {
+        PositionFilter filter = new PositionFilter(10, true);
+        int version = filter.version;
+        filter.setVisible(3, false);
+        assertEquals(version + 1, filter.version);
+    }
+}
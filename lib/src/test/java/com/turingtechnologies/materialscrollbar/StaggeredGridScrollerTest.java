@@ -0,0 +1,55 @@
+/*
+ *  Copyright © 2016-2018, Turing Technologies, an unincorporated organisation of Wynne Plaga
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.turingtechnologies.materialscrollbar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the StaggeredGridScroller copes with adapter notifications which arrive before it
+ * has measured anything.
+ */
+public class StaggeredGridScrollerTest {
+
+    @Test
+    public void insertBeforeFirstMeasure() {
+        StaggeredGridScroller scroller = new StaggeredGridScroller(null, new FenwickHeightIndex(0));
+        scroller.onItemRangeInserted(5, 3);
+        // Nothing fits yet, so everything is left for the first measure to size.
+        assertEquals(0, scroller.index.size());
+    }
+
+    @Test
+    public void removeBeforeFirstMeasure() {
+        StaggeredGridScroller scroller = new StaggeredGridScroller(null, new FenwickHeightIndex(0));
+        scroller.onItemRangeRemoved(2, 4);
+        assertEquals(0, scroller.index.size());
+    }
+
+    @Test
+    public void changesAfterInsertAtStart() {
+        StaggeredGridScroller scroller = new StaggeredGridScroller(null, new FenwickHeightIndex(0));
+        scroller.onItemRangeInserted(0, 10);
+        assertEquals(10, scroller.index.size());
+        scroller.onItemRangeRemoved(8, 2);
+        assertEquals(8, scroller.index.size());
+        scroller.onItemRangeRemoved(6, 4);
+        assertEquals(0, scroller.index.size());
+    }
+}